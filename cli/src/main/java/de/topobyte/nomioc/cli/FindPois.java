@@ -33,6 +33,7 @@ import de.topobyte.luqe.iface.QueryException;
 import de.topobyte.nomioc.luqe.dao.Dao;
 import de.topobyte.nomioc.luqe.dao.MatchMode;
 import de.topobyte.nomioc.luqe.dao.SortOrder;
+import de.topobyte.nomioc.luqe.dao.TrigramDao;
 import de.topobyte.nomioc.luqe.model.SqPoi;
 import de.topobyte.nomioc.luqe.model.SqPoiType;
 
@@ -79,9 +80,16 @@ public class FindPois
 			typeMap.put(type.getId(), type.getName());
 		}
 
-		List<SqPoi> pois = Dao.getPois(db, query, MatchMode.ANYWHERE,
-				SortOrder.ASCENDING, 100, 0);
+		List<SqPoi> pois;
+		if (TrigramDao.hasNameIndex(db)) {
+			pois = TrigramDao.getPois(db, query, MatchMode.ANYWHERE,
+					SortOrder.ASCENDING, 100, 0);
+		} else {
+			pois = Dao.getPois(db, query, MatchMode.ANYWHERE,
+					SortOrder.ASCENDING, 100, 0);
+		}
 		pois = Dao.fillTypes(db, pois);
+		Dao.fillBoroughs(db, pois);
 
 		for (SqPoi poi : pois) {
 			String bs = poi.getBoroughsAsString(db);
@@ -28,6 +28,7 @@ import de.topobyte.luqe.iface.QueryException;
 import de.topobyte.nomioc.luqe.dao.Dao;
 import de.topobyte.nomioc.luqe.dao.MatchMode;
 import de.topobyte.nomioc.luqe.dao.SortOrder;
+import de.topobyte.nomioc.luqe.dao.TrigramDao;
 import de.topobyte.nomioc.luqe.model.SqRoad;
 
 public class FindStreets
@@ -67,8 +68,15 @@ public class FindStreets
 	private static void query(IConnection db, String query)
 			throws QueryException
 	{
-		List<SqRoad> roads = Dao.getRoads(db, query, MatchMode.ANYWHERE,
-				SortOrder.ASCENDING, 100, 0);
+		List<SqRoad> roads;
+		if (TrigramDao.hasNameIndex(db)) {
+			roads = TrigramDao.getRoads(db, query, MatchMode.ANYWHERE,
+					SortOrder.ASCENDING, 100, 0);
+		} else {
+			roads = Dao.getRoads(db, query, MatchMode.ANYWHERE,
+					SortOrder.ASCENDING, 100, 0);
+		}
+		Dao.fillBoroughs(db, roads);
 
 		for (SqRoad road : roads) {
 			String bs = road.getBoroughsAsString(db);
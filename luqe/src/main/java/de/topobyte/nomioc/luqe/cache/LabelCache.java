@@ -0,0 +1,322 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.slimjars.dist.gnu.trove.list.TIntList;
+
+import de.topobyte.adt.geo.BBox;
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.QueryException;
+import de.topobyte.mercatorcoordinates.GeoConv;
+import de.topobyte.nomioc.luqe.dao.Dao;
+import de.topobyte.nomioc.luqe.model.LabelBatch;
+import de.topobyte.nomioc.luqe.model.SqLabel;
+import de.topobyte.sqlitespatial.spatialindex.access.SpatialIndex;
+
+/**
+ * A cache for label queries of map viewports. Requested bounding boxes are
+ * snapped to the cells of a regular grid in the mercator coordinates of
+ * {@link GeoConv}, labels are queried and cached per cell and set of POI types,
+ * and the result for a viewport is assembled from the cells it overlaps. Since
+ * neighbouring and overlapping viewports share cells, most requests of a
+ * panning map client can be answered without querying the database.
+ *
+ * The results contain the same labels as the corresponding methods in
+ * {@link Dao}, though not necessarily in the same order. The cache is bounded
+ * by the total number of labels stored, evicting the least recently used
+ * cells first. Viewports that span more than a configurable number of cells
+ * are queried directly.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class LabelCache
+{
+
+	private int shift;
+	private int maxLabels;
+	private int maxCellsPerQuery;
+
+	private LinkedHashMap<Key, LabelBatch> cells = new LinkedHashMap<>(16,
+			0.75f, true);
+	private long numLabels = 0;
+	private long numNameChars = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long bypasses = 0;
+
+	/**
+	 * Create a label cache with cells of size 2^12 in mercator coordinates,
+	 * which corresponds to tiles at zoom level 14.
+	 *
+	 * @param maxLabels
+	 *            the maximum number of labels to keep.
+	 */
+	public LabelCache(int maxLabels)
+	{
+		this(12, maxLabels, 64);
+	}
+
+	/**
+	 * @param shift
+	 *            the size of grid cells as a power of two in mercator
+	 *            coordinates.
+	 * @param maxLabels
+	 *            the maximum number of labels to keep.
+	 * @param maxCellsPerQuery
+	 *            the maximum number of cells of a viewport to assemble from
+	 *            the cache. Larger viewports are queried directly.
+	 */
+	public LabelCache(int shift, int maxLabels, int maxCellsPerQuery)
+	{
+		this.shift = shift;
+		this.maxLabels = maxLabels;
+		this.maxCellsPerQuery = maxCellsPerQuery;
+	}
+
+	public List<SqLabel> getLabels(IConnection db, SpatialIndex spatialIndex,
+			BBox bbox, TIntList ids) throws QueryException
+	{
+		LabelBatch batch = new LabelBatch();
+		getLabels(db, spatialIndex, bbox, ids, batch);
+
+		List<SqLabel> labels = new ArrayList<>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			labels.add(batch.get(i, new SqLabel()));
+		}
+		return labels;
+	}
+
+	/**
+	 * Fill the batch with the labels of the specified types within the
+	 * bounding box.
+	 *
+	 * @param spatialIndex
+	 *            the spatial index to use for querying cells or null to query
+	 *            without it.
+	 */
+	public synchronized void getLabels(IConnection db,
+			SpatialIndex spatialIndex, BBox bbox, TIntList ids,
+			LabelBatch batch) throws QueryException
+	{
+		int x1 = GeoConv.mercatorFromLongitude(bbox.getLon1());
+		int x2 = GeoConv.mercatorFromLongitude(bbox.getLon2());
+		int y1 = GeoConv.mercatorFromLatitude(bbox.getLat1());
+		int y2 = GeoConv.mercatorFromLatitude(bbox.getLat2());
+		int minX = Math.min(x1, x2);
+		int maxX = Math.max(x1, x2);
+		int minY = Math.min(y1, y2);
+		int maxY = Math.max(y1, y2);
+
+		int cellMinX = minX >> shift;
+		int cellMaxX = maxX >> shift;
+		int cellMinY = minY >> shift;
+		int cellMaxY = maxY >> shift;
+
+		long numCells = (long) (cellMaxX - cellMinX + 1)
+				* (cellMaxY - cellMinY + 1);
+		if (numCells > maxCellsPerQuery) {
+			bypasses++;
+			Dao.getLabels(db, spatialIndex, minX, maxX, minY, maxY, ids,
+					batch);
+			return;
+		}
+
+		int[] types = ids.toArray();
+		Arrays.sort(types);
+
+		batch.clear();
+		for (int cx = cellMinX; cx <= cellMaxX; cx++) {
+			for (int cy = cellMinY; cy <= cellMaxY; cy++) {
+				LabelBatch cell = getCell(db, spatialIndex, ids,
+						new Key(types, cx, cy));
+				copy(cell, batch, minX, maxX, minY, maxY);
+			}
+		}
+		evict();
+	}
+
+	private LabelBatch getCell(IConnection db, SpatialIndex spatialIndex,
+			TIntList ids, Key key) throws QueryException
+	{
+		LabelBatch cell = cells.get(key);
+		if (cell != null) {
+			hits++;
+			return cell;
+		}
+		misses++;
+
+		int minX = key.x << shift;
+		int minY = key.y << shift;
+		int maxX = minX + (1 << shift) - 1;
+		int maxY = minY + (1 << shift) - 1;
+
+		cell = new LabelBatch();
+		Dao.getLabels(db, spatialIndex, minX, maxX, minY, maxY, ids, cell);
+		cells.put(key, cell);
+		numLabels += cell.size();
+		numNameChars += nameChars(cell);
+		return cell;
+	}
+
+	private static void copy(LabelBatch cell, LabelBatch batch, int minX,
+			int maxX, int minY, int maxY)
+	{
+		for (int i = 0; i < cell.size(); i++) {
+			int x = cell.getX(i);
+			int y = cell.getY(i);
+			if (x < minX || x > maxX || y < minY || y > maxY) {
+				continue;
+			}
+			batch.add(cell.getId(i), cell.getType(i), x, y, cell.getName(i));
+		}
+	}
+
+	/**
+	 * Remove least recently used cells until the number of labels is within
+	 * the limit. Cells used by the current query have just been accessed, so
+	 * they are evicted last.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Key, LabelBatch>> iterator = cells.entrySet()
+				.iterator();
+		while (numLabels > maxLabels && iterator.hasNext()) {
+			LabelBatch cell = iterator.next().getValue();
+			iterator.remove();
+			numLabels -= cell.size();
+			numNameChars -= nameChars(cell);
+		}
+	}
+
+	private static long nameChars(LabelBatch cell)
+	{
+		long chars = 0;
+		for (int i = 0; i < cell.size(); i++) {
+			String name = cell.getName(i);
+			if (name != null) {
+				chars += name.length();
+			}
+		}
+		return chars;
+	}
+
+	public synchronized void clear()
+	{
+		cells.clear();
+		numLabels = 0;
+		numNameChars = 0;
+	}
+
+	public synchronized int getNumberOfCells()
+	{
+		return cells.size();
+	}
+
+	public synchronized long getNumberOfLabels()
+	{
+		return numLabels;
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by the cached labels:
+	 *         four ints and a reference per label plus two bytes per
+	 *         character of the names, ignoring unused array capacity.
+	 */
+	public synchronized long getMemoryFootprint()
+	{
+		return numLabels * (4 * 4 + 8) + numNameChars * 2;
+	}
+
+	/**
+	 * @return the number of cells that could be answered from the cache.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return the number of cells that had to be queried.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return the number of viewports that were too large to use the cache.
+	 */
+	public synchronized long getBypasses()
+	{
+		return bypasses;
+	}
+
+	public synchronized double getHitRate()
+	{
+		long total = hits + misses;
+		if (total == 0) {
+			return 0;
+		}
+		return hits / (double) total;
+	}
+
+	private static class Key
+	{
+
+		private int[] types;
+		private int x;
+		private int y;
+
+		Key(int[] types, int x, int y)
+		{
+			this.types = types;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = Arrays.hashCode(types);
+			hash = 31 * hash + x;
+			hash = 31 * hash + y;
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return x == other.x && y == other.y
+					&& Arrays.equals(types, other.types);
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.slimjars.dist.gnu.trove.iterator.TIntObjectIterator;
+import com.slimjars.dist.gnu.trove.map.TIntObjectMap;
+import com.slimjars.dist.gnu.trove.map.hash.TIntObjectHashMap;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.IPreparedStatement;
+import de.topobyte.luqe.iface.IResultSet;
+import de.topobyte.luqe.iface.QueryException;
+import de.topobyte.nomioc.luqe.model.SqBorough;
+import de.topobyte.nomioc.luqe.model.SqEntity;
+import de.topobyte.nomioc.luqe.model.SqPostcode;
+
+/**
+ * A cache of all borough sets and postal code sets of a database. Since the
+ * database deduplicates region membership into those sets, there are only few
+ * of them compared to the number of entities, so that all of them are loaded at
+ * once. Afterwards the boroughs and postcodes of entities can be resolved from
+ * their set ids without querying the database.
+ *
+ * The cache is immutable after loading and can be shared between threads. The
+ * returned sets are unmodifiable and shared between all entities with the same
+ * set id.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class RegionSetCache
+{
+
+	private TIntObjectMap<Set<SqBorough>> boroughSets;
+	private TIntObjectMap<Set<SqPostcode>> postcodeSets;
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	private RegionSetCache(TIntObjectMap<Set<SqBorough>> boroughSets,
+			TIntObjectMap<Set<SqPostcode>> postcodeSets)
+	{
+		this.boroughSets = boroughSets;
+		this.postcodeSets = postcodeSets;
+	}
+
+	/**
+	 * Load all borough sets and postal code sets from the database.
+	 *
+	 * @param db
+	 *            the database to query
+	 * @return the cache.
+	 * @throws QueryException
+	 */
+	public static RegionSetCache load(IConnection db) throws QueryException
+	{
+		TIntObjectMap<Set<SqBorough>> boroughSets = loadBoroughSets(db);
+		TIntObjectMap<Set<SqPostcode>> postcodeSets = loadPostcodeSets(db);
+		return new RegionSetCache(boroughSets, postcodeSets);
+	}
+
+	private static TIntObjectMap<Set<SqBorough>> loadBoroughSets(
+			IConnection db) throws QueryException
+	{
+		TIntObjectMap<SqBorough> boroughs = new TIntObjectHashMap<>();
+		IPreparedStatement statement = db
+				.prepareStatement("select id, level, name from boroughs");
+		IResultSet results = statement.executeQuery();
+		while (results.next()) {
+			int id = results.getInt(1);
+			int level = results.getInt(2);
+			String name = results.getString(3);
+			boroughs.put(id, new SqBorough(id, level, name));
+		}
+		results.close();
+
+		TIntObjectMap<Set<SqBorough>> sets = new TIntObjectHashMap<>();
+		statement = db.prepareStatement("select id from borough_sets");
+		results = statement.executeQuery();
+		while (results.next()) {
+			sets.put(results.getInt(1), new HashSet<SqBorough>());
+		}
+		results.close();
+
+		statement = db.prepareStatement("select borough_sets_id, boroughs_id"
+				+ " from borough_sets_boroughs");
+		results = statement.executeQuery();
+		while (results.next()) {
+			Set<SqBorough> set = sets.get(results.getInt(1));
+			SqBorough borough = boroughs.get(results.getInt(2));
+			if (set != null && borough != null) {
+				set.add(borough);
+			}
+		}
+		results.close();
+
+		TIntObjectIterator<Set<SqBorough>> iterator = sets.iterator();
+		while (iterator.hasNext()) {
+			iterator.advance();
+			iterator.setValue(Collections.unmodifiableSet(iterator.value()));
+		}
+		return sets;
+	}
+
+	private static TIntObjectMap<Set<SqPostcode>> loadPostcodeSets(
+			IConnection db) throws QueryException
+	{
+		TIntObjectMap<SqPostcode> postcodes = new TIntObjectHashMap<>();
+		IPreparedStatement statement = db
+				.prepareStatement("select id, code from postalcodes");
+		IResultSet results = statement.executeQuery();
+		while (results.next()) {
+			int id = results.getInt(1);
+			String code = results.getString(2);
+			postcodes.put(id, new SqPostcode(id, code));
+		}
+		results.close();
+
+		TIntObjectMap<Set<SqPostcode>> sets = new TIntObjectHashMap<>();
+		statement = db.prepareStatement("select id from postal_code_sets");
+		results = statement.executeQuery();
+		while (results.next()) {
+			sets.put(results.getInt(1), new HashSet<SqPostcode>());
+		}
+		results.close();
+
+		statement = db.prepareStatement("select postal_code_sets_id, codes_id"
+				+ " from postal_code_sets_postalcodes");
+		results = statement.executeQuery();
+		while (results.next()) {
+			Set<SqPostcode> set = sets.get(results.getInt(1));
+			SqPostcode postcode = postcodes.get(results.getInt(2));
+			if (set != null && postcode != null) {
+				set.add(postcode);
+			}
+		}
+		results.close();
+
+		TIntObjectIterator<Set<SqPostcode>> iterator = sets.iterator();
+		while (iterator.hasNext()) {
+			iterator.advance();
+			iterator.setValue(Collections.unmodifiableSet(iterator.value()));
+		}
+		return sets;
+	}
+
+	/**
+	 * Get the boroughs of the set with the specified id.
+	 *
+	 * @param setId
+	 *            the id of a borough set.
+	 * @return the set of boroughs or null if there is no such set.
+	 */
+	public Set<SqBorough> getBoroughs(int setId)
+	{
+		return count(boroughSets.get(setId));
+	}
+
+	/**
+	 * Get the postcodes of the set with the specified id.
+	 *
+	 * @param setId
+	 *            the id of a postal code set.
+	 * @return the set of postcodes or null if there is no such set.
+	 */
+	public Set<SqPostcode> getPostcodes(int setId)
+	{
+		return count(postcodeSets.get(setId));
+	}
+
+	private <T> T count(T value)
+	{
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Store the boroughs and postcodes with each of the entities so that
+	 * subsequent calls to {@link SqEntity#getBoroughs(IConnection)} and
+	 * {@link SqEntity#getPostcodes(IConnection)} do not need to query the
+	 * database. Entities whose set ids are unknown are left untouched.
+	 *
+	 * @param entities
+	 *            the roads or POIs to resolve the regions for.
+	 */
+	public void fill(List<? extends SqEntity> entities)
+	{
+		for (SqEntity entity : entities) {
+			Set<SqBorough> boroughs = getBoroughs(entity.getBoroughSetId());
+			if (boroughs != null) {
+				entity.setBoroughs(boroughs);
+			}
+			Set<SqPostcode> postcodes = getPostcodes(
+					entity.getPostcodeSetId());
+			if (postcodes != null) {
+				entity.setPostcodes(postcodes);
+			}
+		}
+	}
+
+	public int getNumberOfBoroughSets()
+	{
+		return boroughSets.size();
+	}
+
+	public int getNumberOfPostcodeSets()
+	{
+		return postcodeSets.size();
+	}
+
+	/**
+	 * @return the number of lookups that could be answered from the cache.
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups for set ids not present in the cache.
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public void resetCounters()
+	{
+		hits.set(0);
+		misses.set(0);
+	}
+
+}
@@ -18,11 +18,14 @@
 package de.topobyte.nomioc.luqe.dao;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.slimjars.dist.gnu.trove.TIntCollection;
 import com.slimjars.dist.gnu.trove.iterator.TIntIterator;
 import com.slimjars.dist.gnu.trove.list.TIntList;
+import com.slimjars.dist.gnu.trove.list.array.TIntArrayList;
 import com.slimjars.dist.gnu.trove.map.TIntObjectMap;
 import com.slimjars.dist.gnu.trove.map.hash.TIntObjectHashMap;
 import com.slimjars.dist.gnu.trove.set.TIntSet;
@@ -34,9 +37,13 @@ import de.topobyte.luqe.iface.IPreparedStatement;
 import de.topobyte.luqe.iface.IResultSet;
 import de.topobyte.luqe.iface.QueryException;
 import de.topobyte.mercatorcoordinates.GeoConv;
+import de.topobyte.nomioc.luqe.model.LabelBatch;
+import de.topobyte.nomioc.luqe.model.SqBorough;
+import de.topobyte.nomioc.luqe.model.SqEntity;
 import de.topobyte.nomioc.luqe.model.SqLabel;
 import de.topobyte.nomioc.luqe.model.SqPoi;
 import de.topobyte.nomioc.luqe.model.SqPoiType;
+import de.topobyte.nomioc.luqe.model.SqPostcode;
 import de.topobyte.nomioc.luqe.model.SqRoad;
 import de.topobyte.sqlitespatial.spatialindex.access.SpatialIndex;
 
@@ -63,13 +70,16 @@ public class Dao
 			MatchMode matchMode, SortOrder order, int limit, int offset)
 			throws QueryException
 	{
-		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name"
+		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+				+ " s.boroughs, s.postal_codes"
 				+ " from streets s" + " where s.simple_name like ?"
-				+ " order by s.simple_name " + order(order) + " limit " + limit
-				+ " offset " + offset;
+				+ " order by s.simple_name " + order(order) + ", s.id "
+				+ order(order) + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
+		statement.setInt(2, limit);
+		statement.setInt(3, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqRoad> list = listOfRoadFromResults(results);
@@ -81,17 +91,19 @@ public class Dao
 			String querystring, MatchMode matchMode, TIntSet sids, int limit,
 			int offset) throws QueryException
 	{
-		String questionMarks = buildList(sids.size());
+		String questionMarks = sidList(db, sids);
 
-		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name"
+		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+				+ " s.boroughs, s.postal_codes"
 				+ " from streets s" + " where s.simple_name like ?"
-				+ " and sid in (" + questionMarks + ")" + " limit " + limit
-				+ " offset " + offset;
+				+ " and sid in (" + questionMarks + ")"
+				+ " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
-
-		addParameters(statement, 2, sids.iterator());
+		int idx = addSidParameters(statement, 2, sids);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqRoad> list = listOfRoadFromResults(results);
@@ -119,12 +131,16 @@ public class Dao
 			throws QueryException
 	{
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website" + " from pois p"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
 				+ " where p.simple_name like ?" + " order by p.simple_name "
-				+ order(order) + " limit " + limit + " offset " + offset;
+				+ order(order) + ", p.id " + order(order)
+				+ " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
+		statement.setInt(2, limit);
+		statement.setInt(3, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -139,15 +155,18 @@ public class Dao
 		String questionMarks = buildList(types.size());
 
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
 				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
 				+ " where p.simple_name like ?" + " and pt.types_id in ("
 				+ questionMarks + ")" + " order by p.simple_name "
-				+ order(order) + " limit " + limit + " offset " + offset;
+				+ order(order) + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
-		addParameters(statement, 2, types.iterator());
+		int idx = addParameters(statement, 2, types);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -159,16 +178,19 @@ public class Dao
 			MatchMode matchMode, TIntSet sids, int limit, int offset)
 			throws QueryException
 	{
-		String questionMarks = buildList(sids.size());
+		String questionMarks = sidList(db, sids);
 
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website" + " from pois p"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
 				+ " where p.simple_name like ?" + " and sid in ("
-				+ questionMarks + ")" + " limit " + limit + " offset " + offset;
+				+ questionMarks + ")" + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
-		addParameters(statement, 2, sids.iterator());
+		int idx = addSidParameters(statement, 2, sids);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -180,21 +202,23 @@ public class Dao
 			MatchMode matchMode, TIntSet sids, TIntSet types, int limit,
 			int offset) throws QueryException
 	{
-		String questionMarks1 = buildList(sids.size());
+		String questionMarks1 = sidList(db, sids);
 		String questionMarks2 = buildList(types.size());
 
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
 				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
 				+ " where p.simple_name like ?" + " and sid in ("
 				+ questionMarks1 + ")" + " and pt.types_id in ("
-				+ questionMarks2 + ")" + " limit " + limit + " offset "
-				+ offset;
+				+ questionMarks2 + ")" + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
-		addParameters(statement, 2, sids.iterator());
-		addParameters(statement, 2 + sids.size(), types.iterator());
+		int idx = addSidParameters(statement, 2, sids);
+		idx = addParameters(statement, idx, types);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -202,6 +226,281 @@ public class Dao
 		return list;
 	}
 
+	/**
+	 * Fetch a page of roads using keyset pagination. Unlike
+	 * {@link #getRoads(IConnection, String, MatchMode, SortOrder, int, int)},
+	 * this seeks directly to the first road after the specified position in
+	 * the order of (simple name, id), so that the cost of fetching a page does
+	 * not depend on the number of preceding results.
+	 * 
+	 * @param db
+	 *            a Connection to use for the query
+	 * @param querystring
+	 *            the name to search for.
+	 * @param lastSimpleName
+	 *            the simple name of the last road of the previous page or null
+	 *            to fetch the first page.
+	 * @param lastId
+	 *            the id of the last road of the previous page.
+	 * @param limit
+	 *            the maximum number of results per page.
+	 * @return the page of results.
+	 * @throws QueryException
+	 */
+	public static Page<SqRoad> getRoadsAfter(IConnection db,
+			String querystring, MatchMode matchMode, SortOrder order,
+			String lastSimpleName, int lastId, int limit)
+			throws QueryException
+	{
+		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+				+ " s.boroughs, s.postal_codes"
+				+ " from streets s" + " where s.simple_name like ?"
+				+ seek("s", order, lastSimpleName) + " order by s.simple_name "
+				+ order(order) + ", s.id " + order(order) + " limit ?";
+
+		IPreparedStatement statement = prepare(db, stmt);
+		statement.setString(1, getArgument(querystring, matchMode));
+		int idx = addSeekParameters(statement, 2, lastSimpleName, lastId);
+		statement.setInt(idx, pageLimit(limit));
+
+		IResultSet results = statement.executeQuery();
+		List<SqRoad> list = listOfRoadFromResults(results);
+		results.close();
+		return page(list, limit);
+	}
+
+	/**
+	 * Fetch a page of roads using keyset pagination.
+	 * 
+	 * @param token
+	 *            the token of the previous page or null to fetch the first
+	 *            page.
+	 * @see #getRoadsAfter(IConnection, String, MatchMode, SortOrder, String,
+	 *      int, int)
+	 */
+	public static Page<SqRoad> getRoadsAfter(IConnection db,
+			String querystring, MatchMode matchMode, SortOrder order,
+			String token, int limit) throws QueryException
+	{
+		if (token == null) {
+			return getRoadsAfter(db, querystring, matchMode, order, null, 0,
+					limit);
+		}
+		return getRoadsAfter(db, querystring, matchMode, order,
+				Page.tokenSimpleName(token), Page.tokenId(token), limit);
+	}
+
+	/**
+	 * Fetch a page of POIs using keyset pagination, see
+	 * {@link #getRoadsAfter(IConnection, String, MatchMode, SortOrder, String, int, int)}.
+	 */
+	public static Page<SqPoi> getPoisAfter(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, String lastSimpleName,
+			int lastId, int limit) throws QueryException
+	{
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
+				+ " where p.simple_name like ?" + seek("p", order, lastSimpleName)
+				+ " order by p.simple_name " + order(order) + ", p.id "
+				+ order(order) + " limit ?";
+
+		IPreparedStatement statement = prepare(db, stmt);
+		statement.setString(1, getArgument(querystring, matchMode));
+		int idx = addSeekParameters(statement, 2, lastSimpleName, lastId);
+		statement.setInt(idx, pageLimit(limit));
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = listOfPoiFromResults(results);
+		results.close();
+		return page(list, limit);
+	}
+
+	public static Page<SqPoi> getPoisAfter(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, String token, int limit)
+			throws QueryException
+	{
+		if (token == null) {
+			return getPoisAfter(db, querystring, matchMode, order, null, 0,
+					limit);
+		}
+		return getPoisAfter(db, querystring, matchMode, order,
+				Page.tokenSimpleName(token), Page.tokenId(token), limit);
+	}
+
+	public static Page<SqPoi> getPoisAfter(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, TIntSet types,
+			String lastSimpleName, int lastId, int limit) throws QueryException
+	{
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
+				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
+				+ " where p.simple_name like ?" + " and pt.types_id in ("
+				+ buildList(types.size()) + ")"
+				+ seek("p", order, lastSimpleName) + " order by p.simple_name "
+				+ order(order) + ", p.id " + order(order) + " limit ?";
+
+		IPreparedStatement statement = prepare(db, stmt);
+		statement.setString(1, getArgument(querystring, matchMode));
+		int idx = addParameters(statement, 2, types);
+		idx = addSeekParameters(statement, idx, lastSimpleName, lastId);
+		statement.setInt(idx, pageLimit(limit));
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = listOfPoiFromResults(results);
+		results.close();
+		return page(list, limit);
+	}
+
+	public static Page<SqPoi> getPoisAfter(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, TIntSet types, String token,
+			int limit) throws QueryException
+	{
+		if (token == null) {
+			return getPoisAfter(db, querystring, matchMode, order, types, null,
+					0, limit);
+		}
+		return getPoisAfter(db, querystring, matchMode, order, types,
+				Page.tokenSimpleName(token), Page.tokenId(token), limit);
+	}
+
+	/**
+	 * Build the condition that restricts results to those after the position
+	 * (lastSimpleName, lastId). The first part allows SQLite to seek within the
+	 * index on simple_name, the second part skips entries with the same name
+	 * up to the last id.
+	 */
+	private static String seek(String alias, SortOrder order,
+			String lastSimpleName)
+	{
+		if (lastSimpleName == null) {
+			return "";
+		}
+		String op = order == SortOrder.ASCENDING ? ">" : "<";
+		return " and " + alias + ".simple_name " + op + "= ?" + " and ("
+				+ alias + ".simple_name " + op + " ? or " + alias + ".id " + op
+				+ " ?)";
+	}
+
+	private static int addSeekParameters(IPreparedStatement statement,
+			int idx, String lastSimpleName, int lastId) throws QueryException
+	{
+		if (lastSimpleName == null) {
+			return idx;
+		}
+		statement.setString(idx, lastSimpleName);
+		statement.setString(idx + 1, lastSimpleName);
+		statement.setInt(idx + 2, lastId);
+		return idx + 3;
+	}
+
+	private static int pageLimit(int limit)
+	{
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		// Fetch one more result to find out whether there is another page
+		return limit + 1;
+	}
+
+	private static <T extends SqEntity> Page<T> page(List<T> list, int limit)
+	{
+		if (list.size() <= limit) {
+			return new Page<>(list, null);
+		}
+		list.subList(limit, list.size()).clear();
+		T last = list.get(limit - 1);
+		return new Page<>(list,
+				Page.token(last.getSimpleName(), last.getId()));
+	}
+
+	/**
+	 * Fetch the roads with the specified ids.
+	 *
+	 * @param db
+	 *            a Connection to use for the query
+	 * @param ids
+	 *            the ids of the roads to fetch.
+	 * @return the list of roads in the same order as the ids.
+	 * @throws QueryException
+	 */
+	public static List<SqRoad> getRoadsByIds(IConnection db, TIntList ids)
+			throws QueryException
+	{
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		List<SqRoad> list = new ArrayList<>(ids.size());
+		for (TIntList chunk : chunks(ids)) {
+			String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+					+ " s.boroughs, s.postal_codes"
+					+ " from streets s" + " where s.id in ("
+					+ buildList(chunk.size()) + ")";
+
+			IPreparedStatement statement = prepare(db, stmt);
+			addParameters(statement, 1, chunk);
+
+			IResultSet results = statement.executeQuery();
+			list.addAll(listOfRoadFromResults(results));
+			results.close();
+		}
+		return sortByIds(list, ids);
+	}
+
+	/**
+	 * Fetch the POIs with the specified ids.
+	 *
+	 * @param db
+	 *            a Connection to use for the query
+	 * @param ids
+	 *            the ids of the POIs to fetch.
+	 * @return the list of POIs in the same order as the ids.
+	 * @throws QueryException
+	 */
+	public static List<SqPoi> getPoisByIds(IConnection db, TIntList ids)
+			throws QueryException
+	{
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		List<SqPoi> list = new ArrayList<>(ids.size());
+		for (TIntList chunk : chunks(ids)) {
+			String stmt = "select p.id, p.x, p.y,"
+					+ " p.name, p.simple_name, p.phone, p.website,"
+					+ " p.boroughs, p.postal_codes" + " from pois p"
+					+ " where p.id in (" + buildList(chunk.size()) + ")";
+
+			IPreparedStatement statement = prepare(db, stmt);
+			addParameters(statement, 1, chunk);
+
+			IResultSet results = statement.executeQuery();
+			list.addAll(listOfPoiFromResults(results));
+			results.close();
+		}
+		return sortByIds(list, ids);
+	}
+
+	private static <T extends SqEntity> List<T> sortByIds(List<T> entities,
+			TIntList ids)
+	{
+		TIntObjectMap<T> map = new TIntObjectHashMap<>();
+		for (T entity : entities) {
+			map.put(entity.getId(), entity);
+		}
+		List<T> sorted = new ArrayList<>(entities.size());
+		TIntIterator iterator = ids.iterator();
+		while (iterator.hasNext()) {
+			T entity = map.get(iterator.next());
+			if (entity != null) {
+				sorted.add(entity);
+			}
+		}
+		return sorted;
+	}
+
 	public static List<SqPoi> fillTypes(IConnection db, List<SqPoi> pois)
 			throws QueryException
 	{
@@ -213,9 +512,11 @@ public class Dao
 				+ " WHERE pois_id in (" + buildList(pois.size()) + ")"
 				+ " ORDER BY pois_id";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
-		for (int i = 0; i < pois.size(); i++) {
-			statement.setInt(i + 1, pois.get(i).getId());
+		IPreparedStatement statement = prepare(db, stmt);
+		int n = StatementCache.slots(pois.size());
+		for (int i = 0; i < n; i++) {
+			int k = Math.min(i, pois.size() - 1);
+			statement.setInt(i + 1, pois.get(k).getId());
 		}
 
 		List<SqPoi> ps = new ArrayList<>();
@@ -245,40 +546,162 @@ public class Dao
 		return ps;
 	}
 
-	public static List<SqLabel> getLabels(IConnection db,
-			SpatialIndex spatialIndex, BBox bbox, TIntList ids)
-			throws QueryException
+	/**
+	 * Retrieve the boroughs of all specified entities with a single query per
+	 * {@link StatementCache#MAX_PADDED} distinct sets and store them with the entities so that subsequent calls to
+	 * {@link SqEntity#getBoroughs(IConnection)} do not need to query the
+	 * database anymore.
+	 * 
+	 * @param db
+	 *            the database to query
+	 * @param entities
+	 *            the roads or POIs to retrieve the boroughs for.
+	 * @throws QueryException
+	 */
+	public static void fillBoroughs(IConnection db,
+			List<? extends SqEntity> entities) throws QueryException
 	{
-		int minX = GeoConv.mercatorFromLongitude(bbox.getLon1());
-		int maxX = GeoConv.mercatorFromLongitude(bbox.getLon2());
-		int minY = GeoConv.mercatorFromLatitude(bbox.getLat1());
-		int maxY = GeoConv.mercatorFromLatitude(bbox.getLat2());
+		TIntObjectMap<Set<SqBorough>> sets = new TIntObjectHashMap<>();
+		for (SqEntity entity : entities) {
+			sets.put(entity.getBoroughSetId(), new HashSet<SqBorough>());
+		}
+		if (sets.isEmpty()) {
+			return;
+		}
 
-		TIntSet sids = spatialIndex.getSpatialIndexIds(minX, maxX, minY, maxY);
+		for (TIntList chunk : chunks(sets.keySet())) {
+			String stmt = "select bs.borough_sets_id,"
+					+ " boroughs.id, boroughs.level, boroughs.name"
+					+ " from borough_sets_boroughs bs"
+					+ " join boroughs on bs.boroughs_id=boroughs.id"
+					+ " where bs.borough_sets_id in ("
+					+ buildList(chunk.size()) + ")";
+
+			IPreparedStatement statement = prepare(db, stmt);
+			addParameters(statement, 1, chunk);
+
+			IResultSet results = statement.executeQuery();
+			while (results.next()) {
+				int setId = results.getInt(1);
+				int bid = results.getInt(2);
+				int level = results.getInt(3);
+				String bname = results.getString(4);
+				sets.get(setId).add(new SqBorough(bid, level, bname));
+			}
+			results.close();
+		}
 
-		String questionMarks1 = buildList(ids.size());
-		String questionMarks2 = buildList(sids.size());
+		for (SqEntity entity : entities) {
+			Set<SqBorough> boroughs = sets.get(entity.getBoroughSetId());
+			entity.setBoroughs(new HashSet<>(boroughs));
+		}
+	}
 
-		String stmt = "select pois.id, pois_types.types_id,"
-				+ " pois.x, pois.y, pois.name, pois.simple_name"
-				+ " from pois join pois_types on pois.id=pois_types.pois_id"
-				+ " where pois_types.types_id in (" + questionMarks1 + ")"
-				+ " and sid in (" + questionMarks2 + ")"
-				+ " and pois.y between ? and ? and pois.x between ? and ?";
+	/**
+	 * Retrieve the postcodes of all specified entities with a single query per
+	 * {@link StatementCache#MAX_PADDED} distinct sets and store them with the entities so that subsequent calls to
+	 * {@link SqEntity#getPostcodes(IConnection)} do not need to query the
+	 * database anymore.
+	 * 
+	 * @param db
+	 *            the database to query
+	 * @param entities
+	 *            the roads or POIs to retrieve the postcodes for.
+	 * @throws QueryException
+	 */
+	public static void fillPostcodes(IConnection db,
+			List<? extends SqEntity> entities) throws QueryException
+	{
+		TIntObjectMap<Set<SqPostcode>> sets = new TIntObjectHashMap<>();
+		for (SqEntity entity : entities) {
+			sets.put(entity.getPostcodeSetId(), new HashSet<SqPostcode>());
+		}
+		if (sets.isEmpty()) {
+			return;
+		}
+
+		for (TIntList chunk : chunks(sets.keySet())) {
+			String stmt = "select ps.postal_code_sets_id,"
+					+ " postalcodes.id, postalcodes.code"
+					+ " from postal_code_sets_postalcodes ps"
+					+ " join postalcodes on ps.codes_id=postalcodes.id"
+					+ " where ps.postal_code_sets_id in ("
+					+ buildList(chunk.size()) + ")";
+
+			IPreparedStatement statement = prepare(db, stmt);
+			addParameters(statement, 1, chunk);
+
+			IResultSet results = statement.executeQuery();
+			while (results.next()) {
+				int setId = results.getInt(1);
+				int pid = results.getInt(2);
+				String pname = results.getString(3);
+				sets.get(setId).add(new SqPostcode(pid, pname));
+			}
+			results.close();
+		}
+
+		for (SqEntity entity : entities) {
+			Set<SqPostcode> postcodes = sets.get(entity.getPostcodeSetId());
+			entity.setPostcodes(new HashSet<>(postcodes));
+		}
+	}
+
+	/**
+	 * Stream the roads matching the query to the visitor without materializing
+	 * a list. A single {@link SqRoad} instance is reused for all rows, so the
+	 * visitor must copy any data it wants to retain after returning. The
+	 * statement and any temporary table of spatial index ids are not shared
+	 * with other queries, so that the visitor may issue further queries on the
+	 * same connection.
+	 * 
+	 * @param db
+	 *            a Connection to use for the query
+	 * @param querystring
+	 *            the name to search for.
+	 * @param visitor
+	 *            the visitor to call for each road.
+	 * @throws QueryException
+	 */
+	public static void visitRoads(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, ResultVisitor<SqRoad> visitor)
+			throws QueryException
+	{
+		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+				+ " s.boroughs, s.postal_codes"
+				+ " from streets s" + " where s.simple_name like ?"
+				+ " order by s.simple_name " + order(order);
 
 		IPreparedStatement statement = db.prepareStatement(stmt);
+		statement.setString(1, getArgument(querystring, matchMode));
+		visitRoads(statement.executeQuery(), visitor);
+	}
 
-		List<String> parameters = new ArrayList<>();
-		addParameters(parameters, ids);
-		addParameters(parameters, sids);
+	/**
+	 * Stream the POIs matching the query to the visitor without materializing
+	 * a list, see {@link #visitRoads}.
+	 */
+	public static void visitPois(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, ResultVisitor<SqPoi> visitor)
+			throws QueryException
+	{
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
+				+ " where p.simple_name like ?" + " order by p.simple_name "
+				+ order(order);
 
-		parameters.add(Integer.toString(minY));
-		parameters.add(Integer.toString(maxY));
-		parameters.add(Integer.toString(minX));
-		parameters.add(Integer.toString(maxX));
+		IPreparedStatement statement = db.prepareStatement(stmt);
+		statement.setString(1, getArgument(querystring, matchMode));
+		visitPois(statement.executeQuery(), visitor);
+	}
 
-		String[] args = parameters.toArray(new String[0]);
-		statement.setArguments(args);
+	public static List<SqLabel> getLabels(IConnection db,
+			SpatialIndex spatialIndex, BBox bbox, TIntList ids)
+			throws QueryException
+	{
+		IPreparedStatement statement = labelStatement(db, spatialIndex, bbox,
+				ids);
 
 		IResultSet results = statement.executeQuery();
 		List<SqLabel> list = listOfLabelFromResults(results);
@@ -288,24 +711,157 @@ public class Dao
 
 	public static List<SqLabel> getLabels(IConnection db, BBox bbox,
 			TIntList ids) throws QueryException
+	{
+		IPreparedStatement statement = labelStatement(db, null, bbox, ids);
+
+		IResultSet results = statement.executeQuery();
+		List<SqLabel> list = listOfLabelFromResults(results);
+		results.close();
+		return list;
+	}
+
+	/**
+	 * Fill the batch with the labels within the bounding box. The batch is
+	 * cleared first and can be reused for subsequent queries.
+	 */
+	public static void getLabels(IConnection db, SpatialIndex spatialIndex,
+			BBox bbox, TIntList ids, LabelBatch batch) throws QueryException
+	{
+		IPreparedStatement statement = labelStatement(db, spatialIndex, bbox,
+				ids);
+		fillLabels(statement.executeQuery(), batch);
+	}
+
+	public static void getLabels(IConnection db, BBox bbox, TIntList ids,
+			LabelBatch batch) throws QueryException
+	{
+		IPreparedStatement statement = labelStatement(db, null, bbox, ids);
+		fillLabels(statement.executeQuery(), batch);
+	}
+
+	/**
+	 * Fill the batch with the labels within the specified bounds given in
+	 * mercator coordinates as used by {@link GeoConv}. The bounds are
+	 * inclusive.
+	 * 
+	 * @param spatialIndex
+	 *            the spatial index to restrict the query with or null to query
+	 *            without it.
+	 */
+	public static void getLabels(IConnection db, SpatialIndex spatialIndex,
+			int minX, int maxX, int minY, int maxY, TIntList ids,
+			LabelBatch batch) throws QueryException
+	{
+		IPreparedStatement statement = labelStatement(db, spatialIndex, minX,
+				maxX, minY, maxY, ids);
+		fillLabels(statement.executeQuery(), batch);
+	}
+
+	/**
+	 * Stream the labels within the bounding box to the visitor without
+	 * materializing a list, see {@link #visitRoads}.
+	 */
+	public static void visitLabels(IConnection db, SpatialIndex spatialIndex,
+			BBox bbox, TIntList ids, ResultVisitor<SqLabel> visitor)
+			throws QueryException
+	{
+		int minX = GeoConv.mercatorFromLongitude(bbox.getLon1());
+		int maxX = GeoConv.mercatorFromLongitude(bbox.getLon2());
+		int minY = GeoConv.mercatorFromLatitude(bbox.getLat1());
+		int maxY = GeoConv.mercatorFromLatitude(bbox.getLat2());
+
+		TIntSet sids = null;
+		if (spatialIndex != null) {
+			sids = spatialIndex.getSpatialIndexIds(minX, maxX, minY, maxY);
+		}
+
+		// The shared id table could be refilled by queries of the visitor
+		String table = null;
+		if (sids != null && IdTable.use(sids)) {
+			table = IdTable.create(db, sids);
+		}
+		try {
+			IPreparedStatement statement = labelStatement(db, sids, table,
+					minX, maxX, minY, maxY, ids, false);
+			visitLabels(statement.executeQuery(), visitor);
+		} finally {
+			if (table != null) {
+				IdTable.drop(db, table);
+			}
+		}
+	}
+
+	public static void visitLabels(IConnection db, BBox bbox, TIntList ids,
+			ResultVisitor<SqLabel> visitor) throws QueryException
+	{
+		visitLabels(db, null, bbox, ids, visitor);
+	}
+
+	/**
+	 * Prepare the query for labels of the specified types within the bounding
+	 * box. If a spatial index is given, it is used to restrict the query to
+	 * the relevant parts of the table.
+	 */
+	private static IPreparedStatement labelStatement(IConnection db,
+			SpatialIndex spatialIndex, BBox bbox, TIntList ids)
+			throws QueryException
 	{
 		int minX = GeoConv.mercatorFromLongitude(bbox.getLon1());
 		int maxX = GeoConv.mercatorFromLongitude(bbox.getLon2());
 		int minY = GeoConv.mercatorFromLatitude(bbox.getLat1());
 		int maxY = GeoConv.mercatorFromLatitude(bbox.getLat2());
 
-		String questionMarks1 = buildList(ids.size());
+		return labelStatement(db, spatialIndex, minX, maxX, minY, maxY, ids);
+	}
 
+	private static IPreparedStatement labelStatement(IConnection db,
+			SpatialIndex spatialIndex, int minX, int maxX, int minY, int maxY,
+			TIntList ids) throws QueryException
+	{
+		TIntSet sids = null;
+		if (spatialIndex != null) {
+			sids = spatialIndex.getSpatialIndexIds(minX, maxX, minY, maxY);
+		}
+		return labelStatement(db, sids, null, minX, maxX, minY, maxY, ids,
+				true);
+	}
+
+	/**
+	 * @param sids
+	 *            the spatial index ids to restrict the query to or null to
+	 *            query without them.
+	 * @param table
+	 *            a separate id table that contains the spatial index ids or
+	 *            null to pass them as parameters or in the shared table.
+	 */
+	private static IPreparedStatement labelStatement(IConnection db,
+			TIntSet sids, String table, int minX, int maxX, int minY, int maxY,
+			TIntList ids, boolean cached) throws QueryException
+	{
 		String stmt = "select pois.id, pois_types.types_id,"
 				+ " pois.x, pois.y, pois.name, pois.simple_name"
 				+ " from pois join pois_types on pois.id=pois_types.pois_id"
-				+ " where pois_types.types_id in (" + questionMarks1 + ")"
-				+ " and pois.y between ? and ? and pois.x between ? and ?";
+				+ " where pois_types.types_id in (" + buildList(ids.size())
+				+ ")";
+		if (table != null) {
+			stmt += " and sid in (select sid from " + table + ")";
+		} else if (sids != null) {
+			stmt += " and sid in (" + sidList(db, sids) + ")";
+		}
+		stmt += " and pois.y between ? and ? and pois.x between ? and ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement;
+		if (cached) {
+			statement = prepare(db, stmt);
+		} else {
+			statement = db.prepareStatement(stmt);
+		}
 
 		List<String> parameters = new ArrayList<>();
 		addParameters(parameters, ids);
+		if (sids != null) {
+			addSidParameters(parameters, sids);
+		}
 
 		parameters.add(Integer.toString(minY));
 		parameters.add(Integer.toString(maxY));
@@ -314,11 +870,7 @@ public class Dao
 
 		String[] args = parameters.toArray(new String[0]);
 		statement.setArguments(args);
-
-		IResultSet results = statement.executeQuery();
-		List<SqLabel> list = listOfLabelFromResults(results);
-		results.close();
-		return list;
+		return statement;
 	}
 
 	public static List<SqPoiType> getTypes(IConnection db) throws QueryException
@@ -326,7 +878,7 @@ public class Dao
 		List<SqPoiType> types = new ArrayList<>();
 
 		String stmt = "select * from poitypes";
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 
 		IResultSet results = statement.executeQuery();
 		while (results.next()) {
@@ -334,6 +886,7 @@ public class Dao
 			String name = results.getString(2);
 			types.add(new SqPoiType(id, name));
 		}
+		results.close();
 
 		return types;
 	}
@@ -354,7 +907,7 @@ public class Dao
 	{
 		String stmt = "select id from poitypes " + " where poitypes.name = ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, typeIdentifier);
 
 		IResultSet results = statement.executeQuery();
@@ -366,18 +919,14 @@ public class Dao
 		return id;
 	}
 
-	private static List<SqRoad> listOfRoadFromResults(IResultSet results)
+	static List<SqRoad> listOfRoadFromResults(IResultSet results)
 			throws QueryException
 	{
 		List<SqRoad> list = new ArrayList<>();
 		while (results.next()) {
 			SqRoad road = new SqRoad();
 			list.add(road);
-			road.setId(results.getInt(1));
-			road.setX(results.getInt(2));
-			road.setY(results.getInt(3));
-			road.setName(results.getString(4));
-			road.setSimpleName(results.getString(5));
+			readRoad(results, road);
 		}
 		return list;
 	}
@@ -389,13 +938,7 @@ public class Dao
 		while (results.next()) {
 			SqPoi poi = new SqPoi();
 			list.add(poi);
-			poi.setId(results.getInt(1));
-			poi.setX(results.getInt(2));
-			poi.setY(results.getInt(3));
-			poi.setName(results.getString(4));
-			poi.setSimpleName(results.getString(5));
-			poi.setPhone(results.getString(6));
-			poi.setWebsite(results.getString(7));
+			readPoi(results, poi);
 		}
 		return list;
 	}
@@ -407,20 +950,114 @@ public class Dao
 		while (results.next()) {
 			SqLabel label = new SqLabel();
 			list.add(label);
-			label.setId(results.getInt(1));
-			label.setType(results.getInt(2));
-			label.setX(results.getInt(3));
-			label.setY(results.getInt(4));
+			readLabel(results, label);
+		}
+		return list;
+	}
+
+	private static void fillLabels(IResultSet results, LabelBatch batch)
+			throws QueryException
+	{
+		batch.clear();
+		while (results.next()) {
 			String name = results.getString(5);
 			if (name == null) {
 				name = results.getString(6);
 			}
-			label.setName(name);
+			batch.add(results.getInt(1), results.getInt(2), results.getInt(3),
+					results.getInt(4), name);
 		}
-		return list;
+		results.close();
+	}
+
+	private static void visitRoads(IResultSet results,
+			ResultVisitor<SqRoad> visitor) throws QueryException
+	{
+		SqRoad road = new SqRoad();
+		try {
+			while (results.next()) {
+				readRoad(results, road);
+				road.setBoroughs(null);
+				road.setPostcodes(null);
+				visitor.visit(road);
+			}
+		} finally {
+			results.close();
+		}
+	}
+
+	private static void visitPois(IResultSet results,
+			ResultVisitor<SqPoi> visitor) throws QueryException
+	{
+		SqPoi poi = new SqPoi();
+		try {
+			while (results.next()) {
+				readPoi(results, poi);
+				poi.setTypes(null);
+				poi.setBoroughs(null);
+				poi.setPostcodes(null);
+				visitor.visit(poi);
+			}
+		} finally {
+			results.close();
+		}
+	}
+
+	private static void visitLabels(IResultSet results,
+			ResultVisitor<SqLabel> visitor) throws QueryException
+	{
+		SqLabel label = new SqLabel();
+		try {
+			while (results.next()) {
+				readLabel(results, label);
+				visitor.visit(label);
+			}
+		} finally {
+			results.close();
+		}
+	}
+
+	private static void readRoad(IResultSet results, SqRoad road)
+			throws QueryException
+	{
+		road.setId(results.getInt(1));
+		road.setX(results.getInt(2));
+		road.setY(results.getInt(3));
+		road.setName(results.getString(4));
+		road.setSimpleName(results.getString(5));
+		road.setBoroughSetId(results.getInt(6));
+		road.setPostcodeSetId(results.getInt(7));
+	}
+
+	private static void readPoi(IResultSet results, SqPoi poi)
+			throws QueryException
+	{
+		poi.setId(results.getInt(1));
+		poi.setX(results.getInt(2));
+		poi.setY(results.getInt(3));
+		poi.setName(results.getString(4));
+		poi.setSimpleName(results.getString(5));
+		poi.setPhone(results.getString(6));
+		poi.setWebsite(results.getString(7));
+		poi.setBoroughSetId(results.getInt(8));
+		poi.setPostcodeSetId(results.getInt(9));
+	}
+
+	private static void readLabel(IResultSet results, SqLabel label)
+			throws QueryException
+	{
+		label.setId(results.getInt(1));
+		label.setType(results.getInt(2));
+		label.setX(results.getInt(3));
+		label.setY(results.getInt(4));
+		String name = results.getString(5);
+		if (name == null) {
+			name = results.getString(6);
+		}
+		label.setName(name);
 	}
 
-	private static String getArgument(String querystring, MatchMode matchMode)
+	static String getArgument(String querystring, MatchMode matchMode)
 	{
 		switch (matchMode) {
 		default:
@@ -435,7 +1072,7 @@ public class Dao
 		}
 	}
 
-	private static String order(SortOrder order)
+	static String order(SortOrder order)
 	{
 		if (order == SortOrder.ASCENDING) {
 			return "ASC";
@@ -444,8 +1081,24 @@ public class Dao
 		}
 	}
 
-	private static String buildList(int n)
+	static IPreparedStatement prepare(IConnection db, String stmt)
+			throws QueryException
+	{
+		StatementCache cache = StatementCache.get(db);
+		if (cache == null) {
+			return db.prepareStatement(stmt);
+		}
+		return cache.prepare(stmt);
+	}
+
+	/**
+	 * Build a list of parameters for n values. The list is padded to the
+	 * number of parameters given by {@link StatementCache#slots(int)}, use
+	 * the addParameters() methods to bind the values.
+	 */
+	static String buildList(int n)
 	{
+		n = StatementCache.slots(n);
 		StringBuilder buffer = new StringBuilder();
 		for (int i = 0; i < n - 1; i++) {
 			buffer.append("?");
@@ -455,20 +1108,72 @@ public class Dao
 		return buffer.toString();
 	}
 
-	private static void addParameters(IPreparedStatement statement, int idx,
-			TIntIterator iterator) throws QueryException
+	static int addParameters(IPreparedStatement statement, int idx,
+			TIntCollection values) throws QueryException
 	{
+		return StatementCache.addParameters(statement, idx, values);
+	}
+
+	/**
+	 * Split the values into chunks of at most
+	 * {@link StatementCache#MAX_PADDED} values each. Lists built for a chunk
+	 * stay well below SQLite's limit of 999 parameters per statement.
+	 */
+	static List<TIntList> chunks(TIntCollection values)
+	{
+		List<TIntList> chunks = new ArrayList<>();
+		int size = StatementCache.MAX_PADDED;
+		TIntList chunk = new TIntArrayList(Math.min(values.size(), size));
+		TIntIterator iterator = values.iterator();
 		while (iterator.hasNext()) {
-			statement.setInt(idx++, iterator.next());
+			if (chunk.size() == size) {
+				chunks.add(chunk);
+				chunk = new TIntArrayList(size);
+			}
+			chunk.add(iterator.next());
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
 		}
+		return chunks;
 	}
 
-	private static void addParameters(List<String> params, TIntCollection ids)
+	static void addParameters(List<String> params, TIntCollection ids)
 	{
-		TIntIterator iterator = ids.iterator();
-		while (iterator.hasNext()) {
-			params.add(Integer.toString(iterator.next()));
+		StatementCache.addParameters(params, ids);
+	}
+
+	/**
+	 * Build the contents of a 'sid in (...)' clause. Small sets of spatial
+	 * index ids are passed as a list of parameters, large sets are stored in
+	 * the temporary {@link IdTable} that the clause selects from. Bind the
+	 * values using the addSidParameters() methods.
+	 */
+	static String sidList(IConnection db, TIntCollection sids)
+			throws QueryException
+	{
+		if (!IdTable.use(sids)) {
+			return buildList(sids.size());
 		}
+		IdTable.fill(db, sids);
+		return "select sid from " + IdTable.TABLE;
+	}
+
+	static int addSidParameters(IPreparedStatement statement, int idx,
+			TIntCollection sids) throws QueryException
+	{
+		if (IdTable.use(sids)) {
+			return idx;
+		}
+		return addParameters(statement, idx, sids);
+	}
+
+	static void addSidParameters(List<String> params, TIntCollection sids)
+	{
+		if (IdTable.use(sids)) {
+			return;
+		}
+		addParameters(params, sids);
 	}
 
 	/*
@@ -479,21 +1184,24 @@ public class Dao
 			MatchMode matchMode, TIntSet sids, int minY, int maxY, int minX,
 			int maxX, int limit, int offset) throws QueryException
 	{
-		String questionMarks = buildList(sids.size());
+		String questionMarks = sidList(db, sids);
 
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website" + " from pois p"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
 				+ " where p.simple_name like ?" + " and p.y between ? and ?"
 				+ " and p.x between ? and ?" + " and sid in (" + questionMarks
-				+ ")" + " limit " + limit + " offset " + offset;
+				+ ")" + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
 		statement.setInt(2, minY);
 		statement.setInt(3, maxY);
 		statement.setInt(4, minX);
 		statement.setInt(5, maxX);
-		addParameters(statement, 6, sids.iterator());
+		int idx = addSidParameters(statement, 6, sids);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -508,19 +1216,21 @@ public class Dao
 			throws QueryException
 	{
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
 				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
 				+ " JOIN poitypes t ON (pt.types_id = t.id)"
 				+ " where p.simple_name like ?" + " and p.y between ? and ?"
-				+ " and p.x between ? and ?" + " limit " + limit + " offset "
-				+ offset;
+				+ " and p.x between ? and ?" + " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
 		statement.setInt(2, minY);
 		statement.setInt(3, maxY);
 		statement.setInt(4, minX);
 		statement.setInt(5, maxX);
+		statement.setInt(6, limit);
+		statement.setInt(7, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -534,17 +1244,18 @@ public class Dao
 			int innerMinX, int innerMaxX, int limit, int offset)
 			throws QueryException
 	{
-		String questionMarks = buildList(sids.size());
+		String questionMarks = sidList(db, sids);
 
 		String stmt = "select p.id, p.x, p.y,"
-				+ " p.name, p.simple_name, p.phone, p.website" + " from pois p"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
 				+ " where p.simple_name like ?"
 				+ " and p.y between ? and ? and p.x between ? and ?"
 				+ " and p.y not between ? and ? and p.x not between ? and ?"
-				+ " and sid in (" + questionMarks + ")" + " limit " + limit
-				+ " offset " + offset;
+				+ " and sid in (" + questionMarks + ")"
+				+ " limit ? offset ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
 		statement.setInt(2, minY);
 		statement.setInt(3, maxY);
@@ -554,7 +1265,9 @@ public class Dao
 		statement.setInt(7, innerMaxY);
 		statement.setInt(8, innerMinX);
 		statement.setInt(9, innerMaxX);
-		addParameters(statement, 10, sids.iterator());
+		int idx = addSidParameters(statement, 10, sids);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
 
 		IResultSet results = statement.executeQuery();
 		List<SqPoi> list = listOfPoiFromResults(results);
@@ -568,7 +1281,7 @@ public class Dao
 		String stmt = "select count(p.id) from pois p"
 				+ " where p.simple_name like ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setString(1, getArgument(querystring, matchMode));
 		IResultSet results = statement.executeQuery();
 		results.next();
@@ -584,7 +1297,7 @@ public class Dao
 		String stmt = "select count(p.id) > ? from pois p"
 				+ " where p.simple_name like ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		statement.setInt(1, n);
 		statement.setString(2, getArgument(querystring, matchMode));
 		IResultSet results = statement.executeQuery();
@@ -604,7 +1317,7 @@ public class Dao
 				+ " where pois_types.types_id in (" + questionMarks + ")"
 				+ " and pois.simple_name like ?";
 
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 
 		List<String> parameters = new ArrayList<>();
 		addParameters(parameters, types);
@@ -631,7 +1344,7 @@ public class Dao
 	public static int getNumberOfRoads(IConnection db) throws QueryException
 	{
 		String stmt = "select count(streets.id) from streets";
-		IPreparedStatement statement = db.prepareStatement(stmt);
+		IPreparedStatement statement = prepare(db, stmt);
 		IResultSet results = statement.executeQuery();
 		results.next();
 		int count = results.getInt(1);
@@ -654,8 +1367,9 @@ public class Dao
 	{
 		String stmt = "select count(pois.id)"
 				+ " from pois join pois_types on pois.id=pois_types.pois_id"
-				+ " where pois_types.types_id = '" + typeId + "'";
-		IPreparedStatement statement = db.prepareStatement(stmt);
+				+ " where pois_types.types_id = ?";
+		IPreparedStatement statement = prepare(db, stmt);
+		statement.setInt(1, typeId);
 		IResultSet results = statement.executeQuery();
 		results.next();
 		int count = results.getInt(1);
@@ -0,0 +1,142 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.slimjars.dist.gnu.trove.TIntCollection;
+import com.slimjars.dist.gnu.trove.iterator.TIntIterator;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.IPreparedStatement;
+import de.topobyte.luqe.iface.QueryException;
+
+/**
+ * A temporary table used to pass large sets of spatial index ids to queries.
+ * Instead of binding each id as a parameter of an 'in (?,?,...)' list, the ids
+ * are inserted into the table and the query selects from it. This avoids
+ * exceeding SQLite's limit on the number of parameters and the cost of
+ * parsing huge statements for large viewports.
+ *
+ * The table is created once per connection and refilled for each query, hence
+ * a connection must not be used from multiple threads concurrently. Queries
+ * whose results are streamed while further queries may run on the connection
+ * use a separate table instead (see {@link #create(IConnection,
+ * TIntCollection)}).
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+class IdTable
+{
+
+	static final String TABLE = "temp.nomioc_sids";
+
+	/**
+	 * The number of rows inserted per insert statement.
+	 */
+	private static final int CHUNK_SIZE = 256;
+
+	/**
+	 * Sets of spatial index ids larger than this are passed via the temporary
+	 * table, smaller ones are bound as parameters.
+	 */
+	static final int THRESHOLD = 256;
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	static boolean use(TIntCollection ids)
+	{
+		return ids.size() > THRESHOLD;
+	}
+
+	/**
+	 * Replace the contents of the table with the specified ids.
+	 */
+	static void fill(IConnection db, TIntCollection ids) throws QueryException
+	{
+		Dao.prepare(db, "create temp table if not exists nomioc_sids"
+				+ " (sid integer primary key)").execute();
+		Dao.prepare(db, "delete from " + TABLE).execute();
+
+		insert(Dao.prepare(db, insertStatement(TABLE)), ids);
+	}
+
+	/**
+	 * Create a separate temporary table with the specified ids, which is not
+	 * affected by other queries on the connection. Statements for this table
+	 * are not cached, since its name is unique. The table needs to be dropped
+	 * using {@link #drop(IConnection, String)} afterwards.
+	 *
+	 * @return the name of the table.
+	 */
+	static String create(IConnection db, TIntCollection ids)
+			throws QueryException
+	{
+		String name = "nomioc_sids_" + counter.incrementAndGet();
+		String table = "temp." + name;
+		db.prepareStatement(
+				"create temp table " + name + " (sid integer primary key)")
+				.execute();
+		insert(db.prepareStatement(insertStatement(table)), ids);
+		return table;
+	}
+
+	static void drop(IConnection db, String table) throws QueryException
+	{
+		db.prepareStatement("drop table " + table).execute();
+	}
+
+	private static void insert(IPreparedStatement insert, TIntCollection ids)
+			throws QueryException
+	{
+		// Partial chunks repeat their last id, duplicates are ignored
+		int n = 0;
+		int last = 0;
+		TIntIterator iterator = ids.iterator();
+		while (iterator.hasNext()) {
+			last = iterator.next();
+			insert.setInt(++n, last);
+			if (n == CHUNK_SIZE) {
+				insert.execute();
+				n = 0;
+			}
+		}
+		if (n > 0) {
+			while (n < CHUNK_SIZE) {
+				insert.setInt(++n, last);
+			}
+			insert.execute();
+		}
+	}
+
+	private static String insertStatement(String table)
+	{
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("insert or ignore into ");
+		buffer.append(table);
+		buffer.append(" (sid) values ");
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			if (i > 0) {
+				buffer.append(",");
+			}
+			buffer.append("(?)");
+		}
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,93 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.dao;
+
+import java.util.List;
+
+/**
+ * A page of results of a name search using keyset pagination. The token
+ * identifies the position after the last result and can be passed to the
+ * corresponding method in {@link Dao} to retrieve the next page.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class Page<T>
+{
+
+	private List<T> results;
+	private String token;
+
+	public Page(List<T> results, String token)
+	{
+		this.results = results;
+		this.token = token;
+	}
+
+	public List<T> getResults()
+	{
+		return results;
+	}
+
+	/**
+	 * @return the continuation token for the next page or null if this is the
+	 *         last page.
+	 */
+	public String getToken()
+	{
+		return token;
+	}
+
+	public boolean hasNext()
+	{
+		return token != null;
+	}
+
+	/**
+	 * Create a token for the position after the entity with the specified
+	 * simple name and id.
+	 */
+	static String token(String simpleName, int id)
+	{
+		return id + ":" + simpleName;
+	}
+
+	static int tokenId(String token)
+	{
+		int colon = separator(token);
+		try {
+			return Integer.parseInt(token.substring(0, colon));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid token: " + token);
+		}
+	}
+
+	static String tokenSimpleName(String token)
+	{
+		return token.substring(separator(token) + 1);
+	}
+
+	private static int separator(String token)
+	{
+		int colon = token.indexOf(':');
+		if (colon < 1) {
+			throw new IllegalArgumentException("Invalid token: " + token);
+		}
+		return colon;
+	}
+
+}
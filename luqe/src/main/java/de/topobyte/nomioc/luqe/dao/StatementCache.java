@@ -0,0 +1,223 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.dao;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.slimjars.dist.gnu.trove.TIntCollection;
+import com.slimjars.dist.gnu.trove.iterator.TIntIterator;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.IPreparedStatement;
+import de.topobyte.luqe.iface.QueryException;
+
+/**
+ * A cache of prepared statements for a connection, so that the queries of
+ * {@link Dao} and {@link TrigramDao} are parsed once and reused afterwards.
+ * Statements are only cached for connections that a cache has been opened for
+ * with {@link #open(IConnection)}. Queries on other connections prepare their
+ * statements each time.
+ *
+ * To keep the number of distinct SQL texts small, limits and offsets are bound
+ * as parameters and the lengths of 'in (?,?,...)' lists are rounded up to the
+ * next power of two (see {@link #slots(int)}). The additional parameters are
+ * filled by repeating the last value, which does not change the result of the
+ * query.
+ *
+ * Cached statements are reused for subsequent queries, hence a connection
+ * must not be used from multiple threads concurrently and result sets need to
+ * be closed before the next query with the same SQL text is executed. The
+ * cache holds on to the connection until it is closed, so call
+ * {@link #close()} before closing the connection:
+ *
+ * <pre>
+ * try (StatementCache cache = StatementCache.open(db)) {
+ * 	// queries on db
+ * }
+ * </pre>
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class StatementCache implements Closeable
+{
+
+	/**
+	 * Lists longer than this are not padded to a power of two, since that
+	 * could exceed the maximum number of parameters of SQLite (999 by
+	 * default).
+	 */
+	static final int MAX_PADDED = 512;
+
+	/**
+	 * Bound to empty lists. Ids are never negative, so 'in (?)' with this value
+	 * matches nothing, like the unbound parameter did before.
+	 */
+	private static final int NO_ID = -1;
+
+	private static final Map<IConnection, StatementCache> caches = new HashMap<>();
+
+	/**
+	 * Start caching the statements of the specified connection until the
+	 * returned cache is closed.
+	 *
+	 * @throws IllegalStateException
+	 *             if a cache is already open for the connection.
+	 */
+	public static synchronized StatementCache open(IConnection db)
+	{
+		if (caches.containsKey(db)) {
+			throw new IllegalStateException(
+					"statement cache already open for connection");
+		}
+		StatementCache cache = new StatementCache(db);
+		caches.put(db, cache);
+		return cache;
+	}
+
+	/**
+	 * Get the open statement cache of the specified connection.
+	 *
+	 * @return the cache or null if none is open.
+	 */
+	static synchronized StatementCache get(IConnection db)
+	{
+		return caches.get(db);
+	}
+
+	private static synchronized void remove(StatementCache cache)
+	{
+		if (caches.get(cache.db) == cache) {
+			caches.remove(cache.db);
+		}
+	}
+
+	private IConnection db;
+	private Map<String, IPreparedStatement> statements = new HashMap<>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private StatementCache(IConnection db)
+	{
+		this.db = db;
+	}
+
+	/**
+	 * Stop caching statements for the connection and drop the cached
+	 * statements.
+	 */
+	@Override
+	public void close()
+	{
+		remove(this);
+		synchronized (this) {
+			statements.clear();
+		}
+	}
+
+	/**
+	 * Get the prepared statement for the specified SQL text, preparing it on
+	 * the first request.
+	 */
+	public synchronized IPreparedStatement prepare(String sql)
+			throws QueryException
+	{
+		IPreparedStatement statement = statements.get(sql);
+		if (statement != null) {
+			hits++;
+			return statement;
+		}
+		misses++;
+		statement = db.prepareStatement(sql);
+		statements.put(sql, statement);
+		return statement;
+	}
+
+	public synchronized int size()
+	{
+		return statements.size();
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Get the number of parameters to use for an 'in' list with n values.
+	 */
+	static int slots(int n)
+	{
+		if (n <= 1) {
+			return 1;
+		}
+		if (n > MAX_PADDED) {
+			return n;
+		}
+		return Integer.highestOneBit(n - 1) << 1;
+	}
+
+	/**
+	 * Bind the values to the parameters of a list created with
+	 * {@link Dao#buildList(int)} beginning at index idx.
+	 *
+	 * @return the index of the first parameter after the list.
+	 */
+	static int addParameters(IPreparedStatement statement, int idx,
+			TIntCollection values) throws QueryException
+	{
+		int n = slots(values.size());
+		int last = NO_ID;
+		TIntIterator iterator = values.iterator();
+		while (iterator.hasNext()) {
+			last = iterator.next();
+			statement.setInt(idx++, last);
+		}
+		for (int i = values.size(); i < n; i++) {
+			statement.setInt(idx++, last);
+		}
+		return idx;
+	}
+
+	/**
+	 * Add the values for a list created with {@link Dao#buildList(int)} to the
+	 * list of parameters.
+	 */
+	static void addParameters(List<String> params, TIntCollection values)
+	{
+		int n = slots(values.size());
+		String last = Integer.toString(NO_ID);
+		TIntIterator iterator = values.iterator();
+		while (iterator.hasNext()) {
+			last = Integer.toString(iterator.next());
+			params.add(last);
+		}
+		for (int i = values.size(); i < n; i++) {
+			params.add(last);
+		}
+	}
+
+}
@@ -0,0 +1,372 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.slimjars.dist.gnu.trove.set.TIntSet;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.IPreparedStatement;
+import de.topobyte.luqe.iface.IResultSet;
+import de.topobyte.luqe.iface.QueryException;
+import de.topobyte.nomioc.luqe.model.SqPoi;
+import de.topobyte.nomioc.luqe.model.SqRoad;
+
+/**
+ * Name search backed by the trigram tables 'streets_trigrams' and
+ * 'pois_trigrams' that map each lower-cased three character substring of an
+ * entity's simple name to the entity's id. The tables are optional, use
+ * {@link #hasNameIndex(IConnection)} to check whether a database contains them.
+ *
+ * The trigram tables are only used to narrow down the set of candidates, each
+ * candidate is still checked with the same 'like' expression as in {@link Dao},
+ * so results are identical to those of the corresponding methods in
+ * {@link Dao}. Queries that cannot be answered from the trigram tables (exact
+ * matches, queries shorter than three characters or containing wildcards) are
+ * delegated to {@link Dao}.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class TrigramDao
+{
+
+	public static final String TABLE_STREETS = "streets_trigrams";
+	public static final String TABLE_POIS = "pois_trigrams";
+
+	/**
+	 * The maximum number of trigrams of a query used to determine candidates.
+	 */
+	private static final int MAX_TRIGRAMS = 3;
+
+	/**
+	 * Check whether the database contains the trigram tables.
+	 *
+	 * @param db
+	 *            the database to query
+	 * @return whether both trigram tables are available.
+	 * @throws QueryException
+	 */
+	public static boolean hasNameIndex(IConnection db) throws QueryException
+	{
+		String stmt = "select count(*) from sqlite_master"
+				+ " where type = 'table' and name in (?, ?)";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		statement.setString(1, TABLE_STREETS);
+		statement.setString(2, TABLE_POIS);
+		IResultSet results = statement.executeQuery();
+		results.next();
+		int count = results.getInt(1);
+		results.close();
+		return count == 2;
+	}
+
+	public static List<SqRoad> getRoads(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, int limit, int offset)
+			throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getRoads(db, querystring, matchMode, order, limit,
+					offset);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select s.id, s.x, s.y, s.name, s.simple_name,"
+				+ " s.boroughs, s.postal_codes"
+				+ " from streets s" + " where s.id in ("
+				+ candidates(TABLE_STREETS, trigrams.size()) + ")"
+				+ " and s.simple_name like ?" + " order by s.simple_name "
+				+ Dao.order(order) + " limit ? offset ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		statement.setInt(idx + 1, limit);
+		statement.setInt(idx + 2, offset);
+
+		IResultSet results = statement.executeQuery();
+		List<SqRoad> list = Dao.listOfRoadFromResults(results);
+		results.close();
+		return list;
+	}
+
+	public static List<SqPoi> getPois(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, int limit, int offset)
+			throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getPois(db, querystring, matchMode, order, limit,
+					offset);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
+				+ " where p.id in (" + candidates(TABLE_POIS, trigrams.size())
+				+ ")" + " and p.simple_name like ?"
+				+ " order by p.simple_name " + Dao.order(order)
+				+ " limit ? offset ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		statement.setInt(idx + 1, limit);
+		statement.setInt(idx + 2, offset);
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = Dao.listOfPoiFromResults(results);
+		results.close();
+		return list;
+	}
+
+	public static List<SqPoi> getPois(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, TIntSet types, int limit,
+			int offset) throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getPois(db, querystring, matchMode, order, types,
+					limit, offset);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
+				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
+				+ " where p.id in (" + candidates(TABLE_POIS, trigrams.size())
+				+ ")" + " and p.simple_name like ?" + " and pt.types_id in ("
+				+ Dao.buildList(types.size()) + ")" + " order by p.simple_name "
+				+ Dao.order(order) + " limit ? offset ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		idx = Dao.addParameters(statement, idx + 1, types);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = Dao.listOfPoiFromResults(results);
+		results.close();
+		return list;
+	}
+
+	public static List<SqPoi> getPoisInIndex(IConnection db, String querystring,
+			MatchMode matchMode, TIntSet sids, int limit, int offset)
+			throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getPoisInIndex(db, querystring, matchMode, sids, limit,
+					offset);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes" + " from pois p"
+				+ " where p.id in (" + candidates(TABLE_POIS, trigrams.size())
+				+ ")" + " and p.simple_name like ?" + " and sid in ("
+				+ Dao.sidList(db, sids) + ")" + " limit ? offset ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		idx = Dao.addSidParameters(statement, idx + 1, sids);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = Dao.listOfPoiFromResults(results);
+		results.close();
+		return list;
+	}
+
+	public static List<SqPoi> getPoisInIndex(IConnection db, String querystring,
+			MatchMode matchMode, TIntSet sids, TIntSet types, int limit,
+			int offset) throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getPoisInIndex(db, querystring, matchMode, sids, types,
+					limit, offset);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select p.id, p.x, p.y,"
+				+ " p.name, p.simple_name, p.phone, p.website,"
+				+ " p.boroughs, p.postal_codes"
+				+ " from pois p JOIN pois_types pt ON (p.id = pt.pois_id)"
+				+ " where p.id in (" + candidates(TABLE_POIS, trigrams.size())
+				+ ")" + " and p.simple_name like ?" + " and sid in ("
+				+ Dao.sidList(db, sids) + ")" + " and pt.types_id in ("
+				+ Dao.buildList(types.size()) + ")" + " limit ? offset ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		idx = Dao.addSidParameters(statement, idx + 1, sids);
+		idx = Dao.addParameters(statement, idx, types);
+		statement.setInt(idx, limit);
+		statement.setInt(idx + 1, offset);
+
+		IResultSet results = statement.executeQuery();
+		List<SqPoi> list = Dao.listOfPoiFromResults(results);
+		results.close();
+		return list;
+	}
+
+	public static int getNumberOfPois(IConnection db, String querystring,
+			MatchMode matchMode) throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getNumberOfPois(db, querystring, matchMode);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select count(p.id) from pois p" + " where p.id in ("
+				+ candidates(TABLE_POIS, trigrams.size()) + ")"
+				+ " and p.simple_name like ?";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		IResultSet results = statement.executeQuery();
+		results.next();
+		int count = results.getInt(1);
+		results.close();
+		return count;
+	}
+
+	public static int getNumberOfPois(IConnection db, String querystring,
+			MatchMode matchMode, TIntSet types) throws QueryException
+	{
+		if (!usable(querystring, matchMode)) {
+			return Dao.getNumberOfPois(db, querystring, matchMode, types);
+		}
+
+		List<String> trigrams = trigrams(querystring);
+
+		String stmt = "select count(pois.id)"
+				+ " from pois join pois_types on pois.id=pois_types.pois_id"
+				+ " where pois.id in (" + candidates(TABLE_POIS, trigrams.size())
+				+ ")" + " and pois.simple_name like ?"
+				+ " and pois_types.types_id in (" + Dao.buildList(types.size())
+				+ ")";
+
+		IPreparedStatement statement = Dao.prepare(db, stmt);
+		int idx = addTrigrams(statement, 1, trigrams);
+		statement.setString(idx, Dao.getArgument(querystring, matchMode));
+		Dao.addParameters(statement, idx + 1, types);
+		IResultSet results = statement.executeQuery();
+		results.next();
+		int count = results.getInt(1);
+		results.close();
+		return count;
+	}
+
+	/**
+	 * Check whether the specified query can be answered using the trigram
+	 * tables.
+	 */
+	static boolean usable(String querystring, MatchMode matchMode)
+	{
+		if (matchMode == MatchMode.EXACT) {
+			return false;
+		}
+		if (querystring.length() < 3) {
+			return false;
+		}
+		// wildcards within the query would not be found in the trigram table
+		return querystring.indexOf('%') < 0 && querystring.indexOf('_') < 0;
+	}
+
+	/**
+	 * Select the trigrams of the query string used for determining candidates.
+	 * We use at most {@link #MAX_TRIGRAMS} trigrams (the first, the last and
+	 * one from the middle) since the intersection of those is usually small
+	 * enough already and each additional trigram costs another index lookup.
+	 *
+	 * Trigrams are lower-cased the same way as SQLite's lower() function does
+	 * it when creating the trigram tables, i.e. only ASCII characters are
+	 * affected. This is consistent with the case-insensitivity of 'like'.
+	 */
+	static List<String> trigrams(String querystring)
+	{
+		String query = lowerAscii(querystring);
+		int n = query.length() - 2;
+
+		List<String> trigrams = new ArrayList<>(MAX_TRIGRAMS);
+		addTrigram(trigrams, query, 0);
+		addTrigram(trigrams, query, n - 1);
+		addTrigram(trigrams, query, (n - 1) / 2);
+		return trigrams;
+	}
+
+	private static void addTrigram(List<String> trigrams, String query,
+			int position)
+	{
+		String trigram = query.substring(position, position + 3);
+		if (!trigrams.contains(trigram)) {
+			trigrams.add(trigram);
+		}
+	}
+
+	static String lowerAscii(String string)
+	{
+		char[] chars = string.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			char c = chars[i];
+			if (c >= 'A' && c <= 'Z') {
+				chars[i] = (char) (c + ('a' - 'A'));
+			}
+		}
+		return new String(chars);
+	}
+
+	private static String candidates(String table, int n)
+	{
+		StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				buffer.append(" intersect ");
+			}
+			buffer.append("select id from ");
+			buffer.append(table);
+			buffer.append(" where trigram = ?");
+		}
+		return buffer.toString();
+	}
+
+	private static int addTrigrams(IPreparedStatement statement, int idx,
+			List<String> trigrams) throws QueryException
+	{
+		for (String trigram : trigrams) {
+			statement.setString(idx++, trigram);
+		}
+		return idx;
+	}
+
+}
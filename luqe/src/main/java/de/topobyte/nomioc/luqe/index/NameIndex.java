@@ -0,0 +1,364 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.slimjars.dist.gnu.trove.list.TIntList;
+import com.slimjars.dist.gnu.trove.list.array.TIntArrayList;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.IPreparedStatement;
+import de.topobyte.luqe.iface.IResultSet;
+import de.topobyte.luqe.iface.QueryException;
+import de.topobyte.nomioc.luqe.dao.MatchMode;
+import de.topobyte.nomioc.luqe.dao.SortOrder;
+
+/**
+ * An immutable in-memory index of the simple names of a table (streets or
+ * pois) that supports exact and prefix lookups.
+ *
+ * All names are stored as lower-cased UTF-8 byte sequences, sorted in unsigned
+ * byte order and concatenated into a single byte array. An offset array points
+ * to the start of each name. Lookups are binary searches that yield a
+ * contiguous range of the arrays.
+ *
+ * The order of the lower-cased names differs from the order of the results
+ * returned by {@link de.topobyte.nomioc.luqe.dao.Dao}, which sorts by the
+ * simple name using the collation of the column (case-sensitive for streets,
+ * case-insensitive for pois) and by id. Hence a parallel array holds the rank
+ * of each name within that order and another array maps ranks to entity ids.
+ * A lookup sorts the ranks of the matching range to produce the same results
+ * as the database. The index consists of four arrays only, no objects are
+ * retained per name.
+ *
+ * Names are lower-cased for ASCII characters only, which is consistent with the
+ * case-insensitivity of SQLite's 'like' operator used by
+ * {@link de.topobyte.nomioc.luqe.dao.Dao}.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class NameIndex
+{
+
+	private final byte[] names;
+	private final int[] offsets;
+	private final int[] ranks;
+	private final int[] ids;
+
+	private NameIndex(byte[] names, int[] offsets, int[] ranks, int[] ids)
+	{
+		this.names = names;
+		this.offsets = offsets;
+		this.ranks = ranks;
+		this.ids = ids;
+	}
+
+	/**
+	 * Load the simple names of all entities of the specified table.
+	 *
+	 * @param db
+	 *            the database to read from.
+	 * @param table
+	 *            the table to index, i.e. 'streets' or 'pois'.
+	 * @return the index.
+	 * @throws QueryException
+	 */
+	public static NameIndex load(IConnection db, String table)
+			throws QueryException
+	{
+		// Determine the exact sizes of the arrays first
+		String stmt = "select count(*), sum(length(cast(lower(simple_name)"
+				+ " as blob))) from " + table
+				+ " where simple_name is not null";
+
+		IPreparedStatement statement = db.prepareStatement(stmt);
+		IResultSet results = statement.executeQuery();
+		results.next();
+		int count = results.getInt(1);
+		int numBytes = results.getInt(2);
+		results.close();
+
+		byte[] names = new byte[numBytes];
+		int[] offsets = new int[count + 1];
+		int[] ranks = new int[count];
+		int[] ids = new int[count];
+
+		// The ids in the order used by Dao, which determines the ranks
+		stmt = "select id from " + table + " where simple_name is not null"
+				+ " order by simple_name, id";
+
+		statement = db.prepareStatement(stmt);
+		results = statement.executeQuery();
+		int r = 0;
+		while (results.next() && r < count) {
+			ids[r++] = results.getInt(1);
+		}
+		results.close();
+
+		// Pairs of id and rank, sorted by id for looking up ranks
+		long[] idToRank = new long[r];
+		for (int k = 0; k < r; k++) {
+			idToRank[k] = ((long) ids[k] << 32) | k;
+		}
+		Arrays.sort(idToRank);
+
+		// SQLite's binary collation compares UTF-8 text with memcmp(), i.e. in
+		// unsigned byte order, which is the order we need for binary search.
+		stmt = "select id, lower(simple_name) from " + table
+				+ " where simple_name is not null"
+				+ " order by lower(simple_name), id";
+
+		statement = db.prepareStatement(stmt);
+		results = statement.executeQuery();
+		int i = 0;
+		int position = 0;
+		while (results.next() && i < count) {
+			byte[] bytes = results.getString(2)
+					.getBytes(StandardCharsets.UTF_8);
+			ranks[i] = rank(idToRank, results.getInt(1));
+			offsets[i] = position;
+			System.arraycopy(bytes, 0, names, position, bytes.length);
+			position += bytes.length;
+			i++;
+		}
+		offsets[i] = position;
+		results.close();
+
+		return new NameIndex(names, offsets, ranks, ids);
+	}
+
+	private static int rank(long[] idToRank, int id)
+	{
+		int lo = 0, hi = idToRank.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if ((int) (idToRank[mid] >> 32) < id) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return (int) idToRank[lo];
+	}
+
+	/**
+	 * @return the number of names in this index.
+	 */
+	public int size()
+	{
+		return ranks.length;
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by this index.
+	 */
+	public long getMemoryFootprint()
+	{
+		// 16 bytes of array header for each of the four arrays
+		return 4 * 16 + names.length + 4L * offsets.length
+				+ 4L * ranks.length + 4L * ids.length;
+	}
+
+	/**
+	 * Find the ids of entities matching the query. Only
+	 * {@link MatchMode#EXACT} and {@link MatchMode#BEGIN_WITH} are supported.
+	 *
+	 * @param querystring
+	 *            the name to search for.
+	 * @param matchMode
+	 *            the way to match names.
+	 * @param order
+	 *            the order of the results with respect to their names.
+	 * @param limit
+	 *            a number limiting the number of results.
+	 * @param offset
+	 *            a number setting the number of results to omit at the
+	 *            beginning.
+	 * @return the ids of the matching entities.
+	 */
+	public TIntList find(String querystring, MatchMode matchMode,
+			SortOrder order, int limit, int offset)
+	{
+		int[] range = range(querystring, matchMode);
+		int start = range[0];
+		int end = range[1];
+
+		int n = Math.max(0, Math.min(limit, end - start - offset));
+		TIntList result = new TIntArrayList(n);
+		if (n == 0) {
+			return result;
+		}
+
+		// Bring the matches into the order of the database
+		int[] matches = Arrays.copyOfRange(ranks, start, end);
+		Arrays.sort(matches);
+
+		if (order == SortOrder.ASCENDING) {
+			for (int i = offset; i < offset + n; i++) {
+				result.add(ids[matches[i]]);
+			}
+		} else {
+			int last = matches.length - 1;
+			for (int i = last - offset; i > last - offset - n; i--) {
+				result.add(ids[matches[i]]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Count the number of entities matching the query. Only
+	 * {@link MatchMode#EXACT} and {@link MatchMode#BEGIN_WITH} are supported.
+	 *
+	 * @param querystring
+	 *            the name to search for.
+	 * @param matchMode
+	 *            the way to match names.
+	 * @return the number of matching entities.
+	 */
+	public int count(String querystring, MatchMode matchMode)
+	{
+		int[] range = range(querystring, matchMode);
+		return range[1] - range[0];
+	}
+
+	private int[] range(String querystring, MatchMode matchMode)
+	{
+		byte[] key = key(querystring);
+		int start = lowerBound(key);
+		int end;
+		switch (matchMode) {
+		case EXACT:
+			end = upperBound(key, start);
+			break;
+		case BEGIN_WITH:
+			end = prefixEnd(key, start);
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unsupported match mode: " + matchMode);
+		}
+		return new int[] { start, end };
+	}
+
+	static byte[] key(String querystring)
+	{
+		char[] chars = querystring.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			char c = chars[i];
+			if (c >= 'A' && c <= 'Z') {
+				chars[i] = (char) (c + ('a' - 'A'));
+			}
+		}
+		return new String(chars).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the index of the first name that is greater or equal to the key.
+	 */
+	private int lowerBound(byte[] key)
+	{
+		int lo = 0, hi = ranks.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the index of the first name after 'from' that is greater than the
+	 *         key.
+	 */
+	private int upperBound(byte[] key, int from)
+	{
+		int lo = from, hi = ranks.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, key) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the index of the first name after 'from' that does not start with
+	 *         the key.
+	 */
+	private int prefixEnd(byte[] key, int from)
+	{
+		int lo = from, hi = ranks.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(mid, key) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Compare the name at the specified index with the key in unsigned
+	 * lexicographic byte order.
+	 */
+	private int compare(int index, byte[] key)
+	{
+		int start = offsets[index];
+		int length = offsets[index + 1] - start;
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int a = names[start + i] & 0xff;
+			int b = key[i] & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length - key.length;
+	}
+
+	/**
+	 * Like {@link #compare(int, byte[])}, but names that start with the key are
+	 * considered equal to the key.
+	 */
+	private int comparePrefix(int index, byte[] key)
+	{
+		int start = offsets[index];
+		int length = offsets[index + 1] - start;
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int a = names[start + i] & 0xff;
+			int b = key[i] & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length >= key.length ? 0 : -1;
+	}
+
+}
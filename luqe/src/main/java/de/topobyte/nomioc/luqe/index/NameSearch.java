@@ -0,0 +1,134 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.index;
+
+import java.util.List;
+
+import com.slimjars.dist.gnu.trove.list.TIntList;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.luqe.iface.QueryException;
+import de.topobyte.nomioc.luqe.dao.Dao;
+import de.topobyte.nomioc.luqe.dao.MatchMode;
+import de.topobyte.nomioc.luqe.dao.SortOrder;
+import de.topobyte.nomioc.luqe.model.SqPoi;
+import de.topobyte.nomioc.luqe.model.SqRoad;
+
+/**
+ * Name search for read-only databases that answers exact and prefix queries
+ * from {@link NameIndex} instances of the streets and POIs that are loaded once
+ * from the database. Only the resulting entities are fetched from the database,
+ * using a single query per search. Queries with other match modes are delegated
+ * to {@link Dao}.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class NameSearch
+{
+
+	private NameIndex streets;
+	private NameIndex pois;
+
+	public NameSearch(NameIndex streets, NameIndex pois)
+	{
+		this.streets = streets;
+		this.pois = pois;
+	}
+
+	public static NameSearch load(IConnection db) throws QueryException
+	{
+		NameIndex streets = NameIndex.load(db, "streets");
+		NameIndex pois = NameIndex.load(db, "pois");
+		return new NameSearch(streets, pois);
+	}
+
+	public NameIndex getStreets()
+	{
+		return streets;
+	}
+
+	public NameIndex getPois()
+	{
+		return pois;
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied by the indexes.
+	 */
+	public long getMemoryFootprint()
+	{
+		return streets.getMemoryFootprint() + pois.getMemoryFootprint();
+	}
+
+	/**
+	 * @return the approximate number of bytes occupied per one million names
+	 *         (0 if the indexes are empty).
+	 */
+	public long getMemoryFootprintPerMillionNames()
+	{
+		long names = streets.size() + pois.size();
+		if (names == 0) {
+			return 0;
+		}
+		return getMemoryFootprint() * 1000000 / names;
+	}
+
+	public List<SqRoad> getRoads(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, int limit, int offset)
+			throws QueryException
+	{
+		if (!supported(querystring, matchMode)) {
+			return Dao.getRoads(db, querystring, matchMode, order, limit,
+					offset);
+		}
+		TIntList ids = streets.find(querystring, matchMode, order, limit,
+				offset);
+		return Dao.getRoadsByIds(db, ids);
+	}
+
+	public List<SqPoi> getPois(IConnection db, String querystring,
+			MatchMode matchMode, SortOrder order, int limit, int offset)
+			throws QueryException
+	{
+		if (!supported(querystring, matchMode)) {
+			return Dao.getPois(db, querystring, matchMode, order, limit,
+					offset);
+		}
+		TIntList ids = pois.find(querystring, matchMode, order, limit, offset);
+		return Dao.getPoisByIds(db, ids);
+	}
+
+	public int getNumberOfPois(IConnection db, String querystring,
+			MatchMode matchMode) throws QueryException
+	{
+		if (!supported(querystring, matchMode)) {
+			return Dao.getNumberOfPois(db, querystring, matchMode);
+		}
+		return pois.count(querystring, matchMode);
+	}
+
+	private static boolean supported(String querystring, MatchMode matchMode)
+	{
+		if (matchMode != MatchMode.EXACT && matchMode != MatchMode.BEGIN_WITH) {
+			return false;
+		}
+		// wildcards are interpreted by 'like' within Dao
+		return querystring.indexOf('%') < 0 && querystring.indexOf('_') < 0;
+	}
+
+}
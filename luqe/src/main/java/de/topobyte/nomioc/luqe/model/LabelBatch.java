@@ -0,0 +1,139 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe.model;
+
+import java.util.Arrays;
+
+/**
+ * A reusable collection of labels stored in parallel arrays instead of one
+ * {@link SqLabel} object per label. A batch can be cleared and refilled for
+ * each query so that, once the arrays have grown to the required size,
+ * repeated queries do not allocate a label object per row. The name of each
+ * label is still a new string read from the result set for every row.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class LabelBatch
+{
+
+	private int size = 0;
+
+	private int[] ids;
+	private int[] types;
+	private int[] xs;
+	private int[] ys;
+	private String[] names;
+
+	public LabelBatch()
+	{
+		this(64);
+	}
+
+	public LabelBatch(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		ids = new int[capacity];
+		types = new int[capacity];
+		xs = new int[capacity];
+		ys = new int[capacity];
+		names = new String[capacity];
+	}
+
+	/**
+	 * Remove all labels, keeping the allocated arrays.
+	 */
+	public void clear()
+	{
+		Arrays.fill(names, 0, size, null);
+		size = 0;
+	}
+
+	public void add(int id, int type, int x, int y, String name)
+	{
+		if (size == ids.length) {
+			grow();
+		}
+		ids[size] = id;
+		types[size] = type;
+		xs[size] = x;
+		ys[size] = y;
+		names[size] = name;
+		size++;
+	}
+
+	private void grow()
+	{
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		types = Arrays.copyOf(types, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		names = Arrays.copyOf(names, capacity);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int getId(int i)
+	{
+		return ids[i];
+	}
+
+	public int getType(int i)
+	{
+		return types[i];
+	}
+
+	public int getX(int i)
+	{
+		return xs[i];
+	}
+
+	public int getY(int i)
+	{
+		return ys[i];
+	}
+
+	public String getName(int i)
+	{
+		return names[i];
+	}
+
+	/**
+	 * Copy the label at the specified position to the label object.
+	 *
+	 * @return the label object passed.
+	 */
+	public SqLabel get(int i, SqLabel label)
+	{
+		label.setId(ids[i]);
+		label.setType(types[i]);
+		label.setX(xs[i]);
+		label.setY(ys[i]);
+		label.setName(names[i]);
+		return label;
+	}
+
+}
@@ -32,6 +32,8 @@ public abstract class SqEntity
 	private String name;
 	private String simpleName;
 	private int x, y;
+	private int boroughSetId;
+	private int postcodeSetId;
 
 	public SqEntity()
 	{
@@ -45,6 +47,8 @@ public abstract class SqEntity
 		simpleName = other.simpleName;
 		y = other.y;
 		x = other.x;
+		boroughSetId = other.boroughSetId;
+		postcodeSetId = other.postcodeSetId;
 	}
 
 	/**
@@ -117,6 +121,36 @@ public abstract class SqEntity
 		this.x = x;
 	}
 
+	/**
+	 * @return the id of the set of boroughs of this entity
+	 */
+	public int getBoroughSetId()
+	{
+		return boroughSetId;
+	}
+
+	/**
+	 * @return the id of the set of postcodes of this entity
+	 */
+	public int getPostcodeSetId()
+	{
+		return postcodeSetId;
+	}
+
+	public void setBoroughSetId(int boroughSetId)
+	{
+		this.boroughSetId = boroughSetId;
+	}
+
+	public void setPostcodeSetId(int postcodeSetId)
+	{
+		this.postcodeSetId = postcodeSetId;
+	}
+
+	public abstract void setBoroughs(Set<SqBorough> boroughs);
+
+	public abstract void setPostcodes(Set<SqPostcode> postcodes);
+
 	public abstract Set<SqBorough> getBoroughs(IConnection db)
 			throws QueryException;
 
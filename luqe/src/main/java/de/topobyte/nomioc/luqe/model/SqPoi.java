@@ -55,6 +55,8 @@ public class SqPoi extends SqEntity
 		}
 		phone = other.phone;
 		website = other.website;
+		boroughs = other.boroughs;
+		postcodes = other.postcodes;
 	}
 
 	public TIntSet getTypes()
@@ -90,6 +92,18 @@ public class SqPoi extends SqEntity
 	private Set<SqBorough> boroughs = null;
 	private Set<SqPostcode> postcodes = null;
 
+	@Override
+	public void setBoroughs(Set<SqBorough> boroughs)
+	{
+		this.boroughs = boroughs;
+	}
+
+	@Override
+	public void setPostcodes(Set<SqPostcode> postcodes)
+	{
+		this.postcodes = postcodes;
+	}
+
 	/**
 	 * Retrieve the set of boroughs for this road.
 	 * 
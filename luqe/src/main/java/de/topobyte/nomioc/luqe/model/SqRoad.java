@@ -32,11 +32,13 @@ import de.topobyte.luqe.iface.QueryException;
 public class SqRoad extends SqEntity
 {
 
+	@Override
 	public void setBoroughs(Set<SqBorough> boroughs)
 	{
 		this.boroughs = boroughs;
 	}
 
+	@Override
 	public void setPostcodes(Set<SqPostcode> postcodes)
 	{
 		this.postcodes = postcodes;
@@ -0,0 +1,118 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.luqe;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.topobyte.luqe.iface.IConnection;
+import de.topobyte.nomioc.luqe.dao.Dao;
+import de.topobyte.nomioc.luqe.dao.MatchMode;
+import de.topobyte.nomioc.luqe.dao.SortOrder;
+import de.topobyte.nomioc.luqe.index.NameSearch;
+import de.topobyte.nomioc.luqe.model.SqEntity;
+import de.topobyte.nomioc.luqe.model.SqPoi;
+import de.topobyte.nomioc.luqe.model.SqRoad;
+import de.topobyte.system.utils.SystemPaths;
+
+public class TestNameSearch
+{
+
+	// Pairs of limit and offset
+	private static final int[][] PAGES = { { 1000, 0 }, { 5, 0 }, { 5, 3 },
+			{ 3, 10 } };
+
+	private IConnection db;
+	private NameSearch search;
+
+	@Before
+	public void prepare() throws Exception
+	{
+		Path path = SystemPaths.CWD;
+		Path pathDatabase = path.resolve("src/test/resources/Bayreuth.sqlite");
+
+		db = Util.openConnection(pathDatabase.toString());
+		search = NameSearch.load(db);
+	}
+
+	@Test
+	public void testMemoryFootprint() throws Exception
+	{
+		// The names plus an offset, a rank and an id per name, no objects per name
+		long perMillion = search.getMemoryFootprintPerMillionNames();
+		Assert.assertTrue(perMillion > 0);
+		Assert.assertTrue(perMillion < 64 * 1000000L);
+	}
+
+	@Test
+	public void testPois() throws Exception
+	{
+		for (String query : new String[] { "gold", "Gold", "hotel", "b", "x",
+				"Goldener Stern" }) {
+			for (MatchMode mode : new MatchMode[] { MatchMode.BEGIN_WITH,
+					MatchMode.EXACT }) {
+				for (SortOrder order : SortOrder.values()) {
+					for (int[] page : PAGES) {
+						List<SqPoi> expected = Dao.getPois(db, query, mode,
+								order, page[0], page[1]);
+						List<SqPoi> pois = search.getPois(db, query, mode,
+								order, page[0], page[1]);
+						Assert.assertEquals(ids(expected), ids(pois));
+					}
+				}
+				Assert.assertEquals(Dao.getNumberOfPois(db, query, mode),
+						search.getNumberOfPois(db, query, mode));
+			}
+		}
+	}
+
+	@Test
+	public void testRoads() throws Exception
+	{
+		for (String query : new String[] { "a", "Bahnhof", "bahnhof",
+				"Zettlitz" }) {
+			for (MatchMode mode : new MatchMode[] { MatchMode.BEGIN_WITH,
+					MatchMode.EXACT }) {
+				for (SortOrder order : SortOrder.values()) {
+					for (int[] page : PAGES) {
+						List<SqRoad> expected = Dao.getRoads(db, query, mode,
+								order, page[0], page[1]);
+						List<SqRoad> roads = search.getRoads(db, query, mode,
+								order, page[0], page[1]);
+						Assert.assertEquals(ids(expected), ids(roads));
+					}
+				}
+			}
+		}
+	}
+
+	private List<Integer> ids(List<? extends SqEntity> entities)
+	{
+		List<Integer> ids = new ArrayList<>();
+		for (SqEntity entity : entities) {
+			ids.add(entity.getId());
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,132 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.road;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+import de.topobyte.geomath.WGS84;
+import de.topobyte.nomioc.road.CoordinateTransformation.Type;
+
+/**
+ * Transforms the coordinates of geometries in place, as opposed to
+ * {@link CoordinateTransformation} which creates a new coordinate for each
+ * transformed coordinate.
+ *
+ * Use {@link #transformed(Geometry, Type)} to obtain a transformed copy of a
+ * geometry backed by packed coordinate sequences: copying allocates a single
+ * array per sequence and the transformation itself allocates nothing.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class CoordinateTransformationFilter implements CoordinateSequenceFilter
+{
+
+	private static final GeometryFactory packedFactory = new GeometryFactory(
+			PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+	private final Type type;
+
+	/**
+	 * @param type
+	 *            the type of transformation to be performed.
+	 */
+	public CoordinateTransformationFilter(Type type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * Create a copy of the geometry with packed coordinate sequences and
+	 * transform it in place.
+	 *
+	 * @param geometry
+	 *            the geometry to transform, which remains unchanged.
+	 * @param type
+	 *            the type of transformation to be performed.
+	 * @return the transformed copy.
+	 */
+	public static Geometry transformed(Geometry geometry, Type type)
+	{
+		Geometry copy = packedFactory.createGeometry(geometry);
+		copy.apply(new CoordinateTransformationFilter(type));
+		return copy;
+	}
+
+	@Override
+	public void filter(CoordinateSequence seq, int i)
+	{
+		double x = seq.getOrdinate(i, CoordinateSequence.X);
+		double y = seq.getOrdinate(i, CoordinateSequence.Y);
+		switch (type) {
+		case MERCATOR_TO_WGS_84:
+			seq.setOrdinate(i, CoordinateSequence.X, WGS84.merc2lon(x));
+			seq.setOrdinate(i, CoordinateSequence.Y, WGS84.merc2lat(y));
+			break;
+		case WGS84_TO_MERCATOR:
+			seq.setOrdinate(i, CoordinateSequence.X, WGS84.lon2merc(x));
+			seq.setOrdinate(i, CoordinateSequence.Y, WGS84.lat2merc(y));
+			break;
+		}
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isGeometryChanged()
+	{
+		return true;
+	}
+
+	/**
+	 * Transform coordinates stored in a packed array of ordinates in place.
+	 *
+	 * @param ordinates
+	 *            the ordinates of the coordinates, one after another.
+	 * @param dimension
+	 *            the number of ordinates per coordinate, at least 2 with x and y
+	 *            being the first two ordinates.
+	 * @param type
+	 *            the type of transformation to be performed.
+	 */
+	public static void transform(double[] ordinates, int dimension, Type type)
+	{
+		switch (type) {
+		case MERCATOR_TO_WGS_84:
+			for (int i = 0; i + 1 < ordinates.length; i += dimension) {
+				ordinates[i] = WGS84.merc2lon(ordinates[i]);
+				ordinates[i + 1] = WGS84.merc2lat(ordinates[i + 1]);
+			}
+			break;
+		case WGS84_TO_MERCATOR:
+			for (int i = 0; i + 1 < ordinates.length; i += dimension) {
+				ordinates[i] = WGS84.lon2merc(ordinates[i]);
+				ordinates[i + 1] = WGS84.lat2merc(ordinates[i + 1]);
+			}
+			break;
+		}
+	}
+
+}
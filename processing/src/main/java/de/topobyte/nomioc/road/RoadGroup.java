@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
@@ -43,6 +44,12 @@ public class RoadGroup
 	private String name;
 	private Set<OsmGeometry> roads;
 
+	// Lazily computed, the set of roads is not expected to change
+	private Envelope envelope = null;
+	private List<LineString> lines = null;
+	private List<Geometry> polygons = null;
+	private boolean linesOnly;
+
 	/**
 	 * Create a new RoadGroup made up of the given roads.
 	 *
@@ -79,29 +86,108 @@ public class RoadGroup
 	}
 
 	/**
-	 * Calculate the mean coordinate of this road group. That is the mean of all
-	 * road's mean coordinates.
+	 * Get the envelope of all roads of this group.
 	 *
-	 * @return this road group's mean coordinate.
+	 * @return the envelope of this group.
+	 */
+	public Envelope getEnvelope()
+	{
+		if (envelope == null) {
+			Envelope union = new Envelope();
+			for (OsmGeometry r : roads) {
+				union.expandToInclude(r.getGeometry().getEnvelopeInternal());
+			}
+			envelope = union;
+		}
+		return envelope;
+	}
+
+	/**
+	 * Calculate the center of this road group. That is the point on the roads
+	 * closest to the center of the group's envelope.
+	 *
+	 * @return this road group's center.
 	 */
 	public Point getMeanCoordinate()
 	{
 		GeometryFactory factory = new GeometryFactory();
 
-		Geometry union = toGeometryCollection();
-
-		Envelope envelope = union.getEnvelopeInternal();
+		Envelope envelope = getEnvelope();
 		double midLon = (envelope.getMinX() + envelope.getMaxX()) / 2;
 		double midLat = (envelope.getMinY() + envelope.getMaxY()) / 2;
 
-		Point mid = factory.createPoint(new Coordinate(midLon, midLat));
+		collectLines();
+		if (!linesOnly) {
+			Geometry union = toGeometryCollection();
+			Point mid = factory.createPoint(new Coordinate(midLon, midLat));
+			DistanceOp distanceOp = new DistanceOp(union, mid);
+			Coordinate[] nearestPoints = distanceOp.nearestPoints();
+			return factory.createPoint(nearestPoints[0]);
+		}
 
-		DistanceOp distanceOp = new DistanceOp(union, mid);
-		Coordinate[] nearestPoints = distanceOp.nearestPoints();
-		Coordinate centerPoint = nearestPoints[0];
+		// The center itself is closest if it lies within an area
+		if (!polygons.isEmpty()) {
+			Point mid = factory.createPoint(new Coordinate(midLon, midLat));
+			for (Geometry polygon : polygons) {
+				if (polygon.intersects(mid)) {
+					return mid;
+				}
+			}
+		}
 
-		Point point = factory.createPoint(centerPoint);
-		return point;
+		// Find the closest point on any segment of the linework
+		double bestDistance = Double.POSITIVE_INFINITY;
+		double bestX = midLon, bestY = midLat;
+		for (LineString line : lines) {
+			CoordinateSequence seq = line.getCoordinateSequence();
+			int n = seq.size();
+			if (n == 0) {
+				continue;
+			}
+			double x1 = seq.getX(0);
+			double y1 = seq.getY(0);
+			if (n == 1) {
+				double d = distanceSq(x1, y1, midLon, midLat);
+				if (d < bestDistance) {
+					bestDistance = d;
+					bestX = x1;
+					bestY = y1;
+				}
+				continue;
+			}
+			for (int i = 1; i < n; i++) {
+				double x2 = seq.getX(i);
+				double y2 = seq.getY(i);
+				double dx = x2 - x1;
+				double dy = y2 - y1;
+				double length = dx * dx + dy * dy;
+				double f = 0;
+				if (length > 0) {
+					f = ((midLon - x1) * dx + (midLat - y1) * dy) / length;
+					f = Math.max(0, Math.min(1, f));
+				}
+				double px = x1 + f * dx;
+				double py = y1 + f * dy;
+				double d = distanceSq(px, py, midLon, midLat);
+				if (d < bestDistance) {
+					bestDistance = d;
+					bestX = px;
+					bestY = py;
+				}
+				x1 = x2;
+				y1 = y2;
+			}
+		}
+
+		return factory.createPoint(new Coordinate(bestX, bestY));
+	}
+
+	private static double distanceSq(double x1, double y1, double x2,
+			double y2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		return dx * dx + dy * dy;
 	}
 
 	@Override
@@ -143,12 +229,32 @@ public class RoadGroup
 
 	public Geometry getLinework()
 	{
-		List<LineString> lines = new ArrayList<>();
+		collectLines();
+		if (lines.size() == 0) {
+			return null;
+		}
+		LineString[] lineArray = lines.toArray(new LineString[0]);
+		return lineArray[0].getFactory().createMultiLineString(lineArray);
+	}
+
+	/**
+	 * Collect the lines of all roads and the boundaries of areas once, for use
+	 * by both {@link #getLinework()} and {@link #getMeanCoordinate()}.
+	 */
+	private void collectLines()
+	{
+		if (lines != null) {
+			return;
+		}
+		lines = new ArrayList<>();
+		polygons = new ArrayList<>();
+		linesOnly = true;
 		for (OsmGeometry or : roads) {
 			Geometry r = or.getGeometry();
 			if (r instanceof LineString) {
 				lines.add((LineString) r);
 			} else if (r instanceof Polygonal) {
+				polygons.add(r);
 				Geometry boundary = r.getBoundary();
 				if (boundary instanceof LineString) {
 					lines.add((LineString) boundary);
@@ -160,13 +266,10 @@ public class RoadGroup
 						}
 					}
 				}
+			} else {
+				linesOnly = false;
 			}
 		}
-		if (lines.size() == 0) {
-			return null;
-		}
-		LineString[] lineArray = lines.toArray(new LineString[0]);
-		return lineArray[0].getFactory().createMultiLineString(lineArray);
 	}
 
 }
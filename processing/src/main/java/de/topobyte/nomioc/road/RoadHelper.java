@@ -17,22 +17,32 @@
 
 package de.topobyte.nomioc.road;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.util.GeometryEditor;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.distance.DistanceOp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.slimjars.dist.gnu.trove.map.hash.THashMap;
 
-import de.topobyte.adt.graph.Graph;
 import de.topobyte.geomath.WGS84;
 
 /**
@@ -44,12 +54,20 @@ public class RoadHelper
 	final static Logger logger = LoggerFactory.getLogger(RoadHelper.class);
 
 	private double distinctionDistance;
+	private int threads = 1;
+	private boolean mercatorDistance = false;
 
 	public RoadHelper(double distinctionDistance)
 	{
 		this.distinctionDistance = distinctionDistance;
 	}
 
+	public RoadHelper(double distinctionDistance, int threads)
+	{
+		this.distinctionDistance = distinctionDistance;
+		this.threads = threads;
+	}
+
 	public double getDistinctionDistance()
 	{
 		return distinctionDistance;
@@ -60,6 +78,48 @@ public class RoadHelper
 		this.distinctionDistance = distinctionDistance;
 	}
 
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads used for grouping roads. Roads with different
+	 * names are grouped independently, so names can be processed concurrently.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public boolean isMercatorDistance()
+	{
+		return mercatorDistance;
+	}
+
+	/**
+	 * Choose how distances between road segments are compared to the
+	 * distinction distance.
+	 *
+	 * By default, the nearest points of two segments are transformed back to
+	 * WGS84 and their haversine distance is compared. In mercator mode, the
+	 * distinction distance is converted to mercator units once per segment,
+	 * using the scale of the projection at the latitude of the segment's
+	 * center, and segments are compared in mercator space without any
+	 * reprojection or allocation of coordinates.
+	 *
+	 * Since mercator is conformal, both modes agree up to the variation of the
+	 * scale between a segment's center and the nearest points. That variation
+	 * is about tan(latitude) per radian, i.e. about 2.5% of the threshold per
+	 * degree of latitude at 55°N and less than 0.3% for segments spanning up
+	 * to 10 kilometers. Only pairs of segments whose distance is within this
+	 * tolerance of the distinction distance may be grouped differently.
+	 */
+	public void setMercatorDistance(boolean mercatorDistance)
+	{
+		this.mercatorDistance = mercatorDistance;
+	}
+
 	/**
 	 * Given a set of Roads, identify road-segments that seem to belong to the
 	 * same logical street and group them.
@@ -68,7 +128,10 @@ public class RoadHelper
 	 *            the set of roads to process.
 	 * @param names
 	 *            the data source for way information.
-	 * @return the possibly smaller set of roads.
+	 * @return the possibly smaller set of roads. The set iterates the groups
+	 *         ordered by name and, for groups with the same name, by the
+	 *         smallest entity of each group, independently of the number of
+	 *         threads.
 	 */
 	public Set<RoadGroup> groupLogically(Collection<OsmGeometry> roads,
 			THashMap<OsmGeometry, String> names)
@@ -89,71 +152,221 @@ public class RoadHelper
 			}
 		}
 
+		List<String> sortedNames = new ArrayList<>(nameToRoads.keySet());
+		Collections.sort(sortedNames);
+
 		// then group sets by distance
-		Set<RoadGroup> grouped = new HashSet<>(roads.size());
+		List<List<RoadGroup>> results;
+		if (threads <= 1) {
+			results = new ArrayList<>(sortedNames.size());
+			for (String name : sortedNames) {
+				Set<OsmGeometry> roadSet = nameToRoads.get(name);
+				results.add(sorted(groupByDistance(name, roadSet)));
+			}
+		} else {
+			results = groupInParallel(sortedNames, nameToRoads);
+		}
 
-		for (String name : nameToRoads.keySet()) {
-			Set<OsmGeometry> roadSet = nameToRoads.get(name);
-			Set<RoadGroup> groups = groupByDistance(name, roadSet);
+		Set<RoadGroup> grouped = new LinkedHashSet<>(roads.size());
+		for (List<RoadGroup> groups : results) {
 			grouped.addAll(groups);
 		}
 
 		return grouped;
 	}
 
+	private List<List<RoadGroup>> groupInParallel(List<String> sortedNames,
+			Map<String, Set<OsmGeometry>> nameToRoads)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<RoadGroup>>> futures = new ArrayList<>(
+					sortedNames.size());
+			for (String name : sortedNames) {
+				Set<OsmGeometry> roadSet = nameToRoads.get(name);
+				futures.add(executor
+						.submit(() -> sorted(groupByDistance(name, roadSet))));
+			}
+
+			List<List<RoadGroup>> results = new ArrayList<>(futures.size());
+			for (Future<List<RoadGroup>> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while grouping roads", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Error while grouping roads",
+					e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Comparator<OsmGeometry> entityOrder = Comparator
+			.comparing(OsmGeometry::getType)
+			.thenComparingLong(OsmGeometry::getId);
+
+	/**
+	 * Order the groups of a single name by their smallest entity, so that the
+	 * order does not depend on hash codes of geometries.
+	 */
+	private static List<RoadGroup> sorted(Set<RoadGroup> groups)
+	{
+		List<RoadGroup> list = new ArrayList<>(groups);
+		if (list.size() > 1) {
+			list.sort(Comparator.comparing(
+					(RoadGroup group) -> Collections.min(group.getRoads(),
+							entityOrder),
+					entityOrder));
+		}
+		return list;
+	}
+
+	/**
+	 * The number of meters per degree of latitude used for converting the
+	 * distinction distance to degrees. This is slightly less than the actual
+	 * value, so that the search envelopes are slightly larger than necessary.
+	 */
+	private static final double METERS_PER_DEGREE = 110000;
+
 	private Set<RoadGroup> groupByDistance(String name,
 			Set<OsmGeometry> roadSet)
 	{
 		Set<RoadGroup> groups = new HashSet<>(2);
 
-		GeometryEditor editor = new GeometryEditor();
-		Set<Geometry> transformed = new HashSet<>();
-		Map<Geometry, OsmGeometry> geomToRoad = new HashMap<>();
+		Map<Geometry, OsmGeometry> geomToRoad = new LinkedHashMap<>();
 		for (OsmGeometry or : roadSet) {
 			Geometry r = or.getGeometry();
-			Geometry trans = editor.edit(r, new CoordinateTransformation(
-					CoordinateTransformation.Type.WGS84_TO_MERCATOR));
-			transformed.add(trans);
+			Geometry trans = CoordinateTransformationFilter.transformed(r,
+					CoordinateTransformation.Type.WGS84_TO_MERCATOR);
 			geomToRoad.put(trans, or);
 		}
 
-		Graph<Geometry> graph = new Graph<>();
-		for (Geometry g : transformed) {
-			graph.addNode(g);
+		int n = geomToRoad.size();
+		Geometry[] transformed = new Geometry[n];
+		OsmGeometry[] originals = new OsmGeometry[n];
+		int k = 0;
+		for (Map.Entry<Geometry, OsmGeometry> entry : geomToRoad.entrySet()) {
+			transformed[k] = entry.getKey();
+			originals[k] = entry.getValue();
+			k++;
 		}
 
-		for (Geometry g : transformed) {
-			for (Geometry h : transformed) {
-				if (g.equals(h)) {
-					continue;
-				}
-				double distance = getDistance(g, h);
-				if (distance <= distinctionDistance) {
-					graph.addEdge(g, h);
-					graph.addEdge(h, g);
+		UnionFind partition = new UnionFind(n);
+
+		double[] thresholds = null;
+		if (mercatorDistance) {
+			thresholds = new double[n];
+			for (int i = 0; i < n; i++) {
+				Envelope envelope = originals[i].getGeometry()
+						.getEnvelopeInternal();
+				double lat = (envelope.getMinY() + envelope.getMaxY()) / 2;
+				thresholds[i] = mercatorThreshold(lat);
+			}
+		}
+
+		if (n > 1) {
+			/*
+			 * Only compute exact distances for pairs of segments whose
+			 * envelopes are closer than the distinction distance. The envelopes
+			 * are computed in WGS84 coordinates, where the distinction distance
+			 * can be converted to degrees conservatively.
+			 */
+			Envelope[] envelopes = new Envelope[n];
+			STRtree index = new STRtree();
+			for (int i = 0; i < n; i++) {
+				envelopes[i] = searchEnvelope(
+						originals[i].getGeometry().getEnvelopeInternal());
+				index.insert(originals[i].getGeometry().getEnvelopeInternal(),
+						i);
+			}
+
+			for (int i = 0; i < n; i++) {
+				@SuppressWarnings("unchecked")
+				List<Integer> candidates = index.query(envelopes[i]);
+				for (int j : candidates) {
+					if (j <= i || partition.find(i) == partition.find(j)) {
+						continue;
+					}
+					boolean close;
+					if (thresholds != null) {
+						double threshold = (thresholds[i] + thresholds[j]) / 2;
+						close = DistanceOp.isWithinDistance(transformed[i],
+								transformed[j], threshold);
+					} else {
+						double distance = getDistance(transformed[i],
+								transformed[j]);
+						close = distance <= distinctionDistance;
+					}
+					if (close) {
+						partition.union(i, j);
+					}
 				}
 			}
 		}
 
-		// get partition of graph... these are the groups.
-		Set<Set<Geometry>> partition = graph.getPartition();
-		for (Set<Geometry> set : partition) {
-			Set<OsmGeometry> roads = new HashSet<>();
-			for (Geometry g : set) {
-				roads.add(geomToRoad.get(g));
+		// get partition of segments... these are the groups.
+		Map<Integer, Set<OsmGeometry>> sets = new LinkedHashMap<>();
+		for (int i = 0; i < n; i++) {
+			int root = partition.find(i);
+			Set<OsmGeometry> roads = sets.get(root);
+			if (roads == null) {
+				roads = new HashSet<>();
+				sets.put(root, roads);
 			}
+			roads.add(originals[i]);
+		}
+		for (Set<OsmGeometry> roads : sets.values()) {
 			groups.add(new RoadGroup(name, roads));
 		}
 
 		return groups;
 	}
 
+	/**
+	 * Expand the specified envelope in WGS84 coordinates by the distinction
+	 * distance.
+	 */
+	private Envelope searchEnvelope(Envelope envelope)
+	{
+		// Add some slack for the difference between great circle distances
+		// and distances along parallels
+		double degrees = distinctionDistance / METERS_PER_DEGREE * 1.1;
+		double maxLat = Math.max(Math.abs(envelope.getMinY()),
+				Math.abs(envelope.getMaxY())) + degrees;
+		double dLon = 180;
+		if (maxLat < 89) {
+			dLon = Math.min(180, degrees / Math.cos(Math.toRadians(maxLat)));
+		}
+		return new Envelope(envelope.getMinX() - dLon,
+				envelope.getMaxX() + dLon, envelope.getMinY() - degrees,
+				envelope.getMaxY() + degrees);
+	}
+
+	/**
+	 * Convert the distinction distance to mercator units at the specified
+	 * latitude by comparing the length of a short meridian segment in both
+	 * spaces.
+	 */
+	private double mercatorThreshold(double lat)
+	{
+		double delta = 0.001;
+		double lat1 = Math.max(-85, Math.min(85, lat)) - delta;
+		double lat2 = lat1 + 2 * delta;
+		double units = Math.abs(WGS84.lat2merc(lat2) - WGS84.lat2merc(lat1));
+		double meters = WGS84.haversineDistance(0, lat1, 0, lat2);
+		return distinctionDistance * units / meters;
+	}
+
+	private static final CoordinateTransformation toWgs84 = new CoordinateTransformation(
+			CoordinateTransformation.Type.MERCATOR_TO_WGS_84);
+
 	private static double getDistance(Geometry g, Geometry h)
 	{
 		Coordinate[] points = DistanceOp.nearestPoints(g, h);
-		CoordinateTransformation trans = new CoordinateTransformation(
-				CoordinateTransformation.Type.MERCATOR_TO_WGS_84);
-		Coordinate[] wgs = trans.edit(points, null);
+		Coordinate[] wgs = toWgs84.edit(points, null);
 		Coordinate c1 = wgs[0];
 		Coordinate c2 = wgs[1];
 		double dist = WGS84.haversineDistance(c1.x, c1.y, c2.x, c2.y);
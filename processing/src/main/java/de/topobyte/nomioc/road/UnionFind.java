@@ -0,0 +1,78 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.road;
+
+/**
+ * A disjoint-set forest over the integers 0 to n - 1 with path compression and
+ * union by rank.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+class UnionFind
+{
+
+	private int[] parent;
+	private byte[] rank;
+
+	UnionFind(int n)
+	{
+		parent = new int[n];
+		rank = new byte[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+		}
+	}
+
+	/**
+	 * Get the representative of the set containing the specified element.
+	 */
+	int find(int i)
+	{
+		int root = i;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		while (parent[i] != root) {
+			int next = parent[i];
+			parent[i] = root;
+			i = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Merge the sets containing the specified elements.
+	 */
+	void union(int i, int j)
+	{
+		int a = find(i);
+		int b = find(j);
+		if (a == b) {
+			return;
+		}
+		if (rank[a] < rank[b]) {
+			parent[a] = b;
+		} else if (rank[a] > rank[b]) {
+			parent[b] = a;
+		} else {
+			parent[b] = a;
+			rank[a]++;
+		}
+	}
+
+}
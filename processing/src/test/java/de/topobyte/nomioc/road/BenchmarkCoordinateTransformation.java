@@ -0,0 +1,112 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.road;
+
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.util.GeometryEditor;
+
+import de.topobyte.nomioc.road.CoordinateTransformation.Type;
+
+/**
+ * Compares reprojection of large multilinestrings using
+ * {@link CoordinateTransformation} with a {@link GeometryEditor}, the in-place
+ * {@link CoordinateTransformationFilter} on a packed copy and the transformation
+ * of a raw array of ordinates.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class BenchmarkCoordinateTransformation
+{
+
+	private static final int ITERATIONS = 50;
+
+	public static void main(String[] args)
+	{
+		Random random = new Random(42);
+		GeometryFactory factory = new GeometryFactory();
+
+		int numLines = 1000;
+		int numPoints = 500;
+		LineString[] lines = new LineString[numLines];
+		double[] ordinates = new double[numLines * numPoints * 2];
+		int k = 0;
+		for (int i = 0; i < numLines; i++) {
+			Coordinate[] coordinates = new Coordinate[numPoints];
+			double x = 6 + random.nextDouble() * 9;
+			double y = 47.5 + random.nextDouble() * 7.5;
+			for (int j = 0; j < numPoints; j++) {
+				x += (random.nextDouble() - 0.5) * 0.001;
+				y += (random.nextDouble() - 0.5) * 0.001;
+				coordinates[j] = new Coordinate(x, y);
+				ordinates[k++] = x;
+				ordinates[k++] = y;
+			}
+			lines[i] = factory.createLineString(coordinates);
+		}
+		Geometry geometry = factory.createMultiLineString(lines);
+
+		System.out.println(String.format("%d lines with %d points each",
+				numLines, numPoints));
+
+		GeometryEditor editor = new GeometryEditor();
+		CoordinateTransformation transformation = new CoordinateTransformation(
+				Type.WGS84_TO_MERCATOR);
+
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			Geometry edited = null;
+			for (int i = 0; i < ITERATIONS; i++) {
+				edited = editor.edit(geometry, transformation);
+			}
+			report("GeometryEditor", start);
+
+			start = System.nanoTime();
+			Geometry filtered = null;
+			for (int i = 0; i < ITERATIONS; i++) {
+				filtered = CoordinateTransformationFilter.transformed(geometry,
+						Type.WGS84_TO_MERCATOR);
+			}
+			report("CoordinateSequenceFilter", start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				double[] copy = ordinates.clone();
+				CoordinateTransformationFilter.transform(copy, 2,
+						Type.WGS84_TO_MERCATOR);
+			}
+			report("packed array", start);
+
+			if (!edited.equalsExact(filtered)) {
+				System.out.println("results differ!");
+			}
+		}
+	}
+
+	private static void report(String name, long start)
+	{
+		long stop = System.nanoTime();
+		System.out.println(String.format("%s: %.2f ms per geometry", name,
+				(stop - start) / 1e6 / ITERATIONS));
+	}
+
+}
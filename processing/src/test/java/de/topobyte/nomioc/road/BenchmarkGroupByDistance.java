@@ -0,0 +1,117 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.road;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import com.slimjars.dist.gnu.trove.map.hash.THashMap;
+
+import de.topobyte.osm4j.core.model.iface.EntityType;
+
+/**
+ * Measures grouping of road segments for a single, very common street name:
+ * segments are scattered in clusters ('towns') across an area the size of
+ * Germany, each cluster forming a few streets of the same name.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class BenchmarkGroupByDistance
+{
+
+	public static void main(String[] args)
+	{
+		int[] sizes = new int[] { 1000, 5000, 20000 };
+		for (int size : sizes) {
+			run(size);
+		}
+	}
+
+	private static void run(int numSegments)
+	{
+		Random random = new Random(42);
+		GeometryFactory factory = new GeometryFactory();
+
+		String name = "Hauptstraße";
+		List<OsmGeometry> segments = new ArrayList<>();
+		THashMap<OsmGeometry, String> names = new THashMap<>();
+
+		int segmentsPerTown = 20;
+		int numTowns = numSegments / segmentsPerTown;
+		long id = 1;
+		for (int t = 0; t < numTowns; t++) {
+			double lon = 6 + random.nextDouble() * 9;
+			double lat = 47.5 + random.nextDouble() * 7.5;
+			for (int s = 0; s < segmentsPerTown; s++) {
+				// segments of roughly 100m within about 2km of the center
+				double x = lon + (random.nextDouble() - 0.5) * 0.03;
+				double y = lat + (random.nextDouble() - 0.5) * 0.02;
+				double dx = (random.nextDouble() - 0.5) * 0.002;
+				double dy = (random.nextDouble() - 0.5) * 0.001;
+				LineString string = factory.createLineString(
+						new Coordinate[] { new Coordinate(x, y),
+								new Coordinate(x + dx, y + dy) });
+				OsmGeometry segment = new OsmGeometry(EntityType.Way, id++,
+						string);
+				segments.add(segment);
+				names.put(segment, name);
+			}
+		}
+
+		RoadHelper roadHelper = new RoadHelper(500);
+		Set<RoadGroup> exact = measure(roadHelper, segments, names,
+				"haversine");
+		roadHelper.setMercatorDistance(true);
+		Set<RoadGroup> mercator = measure(roadHelper, segments, names,
+				"mercator");
+
+		int differences = 0;
+		for (RoadGroup group : mercator) {
+			if (!exact.contains(group)) {
+				differences++;
+			}
+		}
+		System.out.println(String.format(
+				"%d groups of mercator mode differ from haversine mode",
+				differences));
+	}
+
+	private static Set<RoadGroup> measure(RoadHelper roadHelper,
+			List<OsmGeometry> segments, THashMap<OsmGeometry, String> names,
+			String mode)
+	{
+		// warm up
+		roadHelper.groupLogically(segments, names);
+
+		long start = System.nanoTime();
+		Set<RoadGroup> groups = roadHelper.groupLogically(segments, names);
+		long stop = System.nanoTime();
+
+		System.out.println(String.format(
+				"%s: %d segments, %d groups: %.1f ms", mode, segments.size(),
+				groups.size(), (stop - start) / 1e6));
+		return groups;
+	}
+
+}
@@ -29,6 +29,7 @@ import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.topobyte.nomioc.android.v2.output.OutputMode;
 import de.topobyte.nomioc.android.v2.task.CreateDatabaseCustom;
 import de.topobyte.nomioc.android.v2.task.DatabaseCreationException;
 import de.topobyte.utilities.apache.commons.cli.OptionHelper;
@@ -52,6 +53,12 @@ public class DatabaseCreatorCustom
 	final static String OPTION_WAYDB = "way-db";
 	final static String OPTION_FAILED_INTERSECTIONS = "failures";
 	final static String OPTION_UPDATE = "update-only";
+	final static String OPTION_OUTPUT_MODE = "output-mode";
+	final static String OPTION_FLUSH_INTERVAL = "flush-interval";
+	final static String OPTION_THREADS = "threads";
+	final static String OPTION_EXTERNAL = "external-dir";
+	final static String OPTION_MERCATOR_DISTANCE = "mercator-distance";
+	final static String OPTION_TRIGRAMS = "trigrams";
 
 	public static void addOptions(Options options)
 	{
@@ -65,6 +72,12 @@ public class DatabaseCreatorCustom
 		OptionHelper.addL(options, OPTION_WAYDB, true, true, "basename", "way database");
 		OptionHelper.addL(options, OPTION_FAILED_INTERSECTIONS, true, false, "directory", "where to dump failing intersections");
 		OptionHelper.addL(options, OPTION_UPDATE, false, false, "boolean", "whether to consider only items with timestamps older than input file");
+		OptionHelper.addL(options, OPTION_OUTPUT_MODE, true, false, "mode", "how to write the database: 'hibernate' (default) or 'jdbc'");
+		OptionHelper.addL(options, OPTION_FLUSH_INTERVAL, true, false, "number", "number of insertions after which to flush and clear the hibernate session (does not batch inserts), 0 to disable");
+		OptionHelper.addL(options, OPTION_THREADS, true, false, "number", "number of threads for grouping streets and preparing pois");
+		OptionHelper.addL(options, OPTION_EXTERNAL, true, false, "directory", "store poi candidates in temporary files here instead of memory");
+		OptionHelper.addL(options, OPTION_MERCATOR_DISTANCE, false, false, "boolean", "group streets by mercator instead of haversine distance");
+		OptionHelper.addL(options, OPTION_TRIGRAMS, false, false, "boolean", "create trigram tables for substring name search");
 		// @formatter:on
 	}
 
@@ -79,6 +92,12 @@ public class DatabaseCreatorCustom
 		public String pathWayDB;
 		public String pathFailingIntersections;
 		public boolean updateOnly;
+		public OutputMode outputMode = OutputMode.HIBERNATE;
+		public int flushInterval = -1;
+		public int threads = 1;
+		public String pathExternal;
+		public boolean mercatorDistance;
+		public boolean trigramTables;
 	}
 
 	public static Arguments parse(CommandLine line)
@@ -95,6 +114,36 @@ public class DatabaseCreatorCustom
 		args.pathFailingIntersections = line
 				.getOptionValue(OPTION_FAILED_INTERSECTIONS);
 		args.updateOnly = line.hasOption(OPTION_UPDATE);
+		args.pathExternal = line.getOptionValue(OPTION_EXTERNAL);
+		args.mercatorDistance = line.hasOption(OPTION_MERCATOR_DISTANCE);
+		args.trigramTables = line.hasOption(OPTION_TRIGRAMS);
+		if (line.hasOption(OPTION_OUTPUT_MODE)) {
+			String mode = line.getOptionValue(OPTION_OUTPUT_MODE);
+			try {
+				args.outputMode = OutputMode.valueOf(mode.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.out.println("invalid output mode: " + mode);
+				System.exit(1);
+			}
+		}
+		if (line.hasOption(OPTION_FLUSH_INTERVAL)) {
+			String value = line.getOptionValue(OPTION_FLUSH_INTERVAL);
+			try {
+				args.flushInterval = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				System.out.println("invalid flush interval: " + value);
+				System.exit(1);
+			}
+		}
+		if (line.hasOption(OPTION_THREADS)) {
+			String value = line.getOptionValue(OPTION_THREADS);
+			try {
+				args.threads = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				System.out.println("invalid number of threads: " + value);
+				System.exit(1);
+			}
+		}
 
 		return args;
 	}
@@ -131,6 +180,14 @@ public class DatabaseCreatorCustom
 				arguments.pathFailingIntersections, arguments.updateOnly,
 				Paths.get(arguments.pathNodeDB),
 				Paths.get(arguments.pathWayDB));
+		task.setOutputMode(arguments.outputMode);
+		task.setFlushInterval(arguments.flushInterval);
+		task.setThreads(arguments.threads);
+		task.setMercatorDistance(arguments.mercatorDistance);
+		task.setTrigramTables(arguments.trigramTables);
+		if (arguments.pathExternal != null) {
+			task.setExternalDirectory(Paths.get(arguments.pathExternal));
+		}
 		task.prepare();
 		task.execute();
 	}
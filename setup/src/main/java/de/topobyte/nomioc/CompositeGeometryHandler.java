@@ -0,0 +1,95 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.geometry.OsmEntityGeometryHandler;
+
+/**
+ * A geometry handler that passes each entity to a list of handlers, so that
+ * several handlers can be fed by a single pass over the input and the
+ * geometries of ways and relations need to be built only once.
+ *
+ * Handlers are called in the order they have been added to. They receive the
+ * same tag map, hence handlers that modify tags must come after those that
+ * should see the original tags.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class CompositeGeometryHandler implements OsmEntityGeometryHandler
+{
+
+	private List<OsmEntityGeometryHandler> handlers = new ArrayList<>();
+
+	public CompositeGeometryHandler(OsmEntityGeometryHandler... handlers)
+	{
+		this.handlers.addAll(Arrays.asList(handlers));
+	}
+
+	public void add(OsmEntityGeometryHandler handler)
+	{
+		handlers.add(handler);
+	}
+
+	@Override
+	public void processNode(OsmNode node, Point point, Map<String, String> tags)
+	{
+		for (OsmEntityGeometryHandler handler : handlers) {
+			handler.processNode(node, point, tags);
+		}
+	}
+
+	@Override
+	public void processWayString(OsmWay way, LineString string,
+			Map<String, String> tags)
+	{
+		for (OsmEntityGeometryHandler handler : handlers) {
+			handler.processWayString(way, string, tags);
+		}
+	}
+
+	@Override
+	public void processMultipolygon(OsmWay way, MultiPolygon polygon,
+			Map<String, String> tags, Point centroid)
+	{
+		for (OsmEntityGeometryHandler handler : handlers) {
+			handler.processMultipolygon(way, polygon, tags, centroid);
+		}
+	}
+
+	@Override
+	public void processMultipolygon(OsmRelation relation, MultiPolygon polygon,
+			Map<String, String> tags, Point centroid)
+	{
+		for (OsmEntityGeometryHandler handler : handlers) {
+			handler.processMultipolygon(relation, polygon, tags, centroid);
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc;
+
+/**
+ * Positions of mercator coordinates on a Hilbert curve. Sorting items by this
+ * position keeps items close to each other in space close to each other in
+ * the sequence, which makes consecutive runs of items suitable as leaves of a
+ * spatial index.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class HilbertCurve
+{
+
+	private static final int ORDER = 31;
+
+	/**
+	 * Compute the position of the specified coordinates on a Hilbert curve of
+	 * order 31, i.e. with a resolution of two units in each dimension.
+	 */
+	public static long position(int x, int y)
+	{
+		// map to the non-negative range and halve the resolution, so that the
+		// position fits into a long
+		long hx = ((long) x - Integer.MIN_VALUE) >> 1;
+		long hy = ((long) y - Integer.MIN_VALUE) >> 1;
+
+		long n = 1L << ORDER;
+		long d = 0;
+		for (long s = n >> 1; s > 0; s >>= 1) {
+			int rx = (hx & s) != 0 ? 1 : 0;
+			int ry = (hy & s) != 0 ? 1 : 0;
+			d += s * s * ((3 * rx) ^ ry);
+			// rotate the quadrant
+			if (ry == 0) {
+				if (rx == 1) {
+					hx = n - 1 - hx;
+					hy = n - 1 - hy;
+				}
+				long t = hx;
+				hx = hy;
+				hy = t;
+			}
+		}
+		return d;
+	}
+
+}
@@ -19,22 +19,26 @@ package de.topobyte.nomioc;
 
 import java.util.List;
 
-import org.hibernate.SessionFactory;
-
 import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexItem;
+import de.topobyte.nomioc.android.v2.output.GazetteerOutput;
 import de.topobyte.sqlitespatial.spatialindex.builder.IndexBuilder;
 import de.topobyte.sqlitespatial.spatialindex.builder.Indexable;
 import de.topobyte.sqlitespatial.spatialindex.builder.Node;
 import de.topobyte.sqlitespatial.spatialindex.builder.Rectangle;
 
-public class HibernateIndexBuilder
+public class SpatialIndexBuilder
 {
 
+	/**
+	 * The maximum number of items per leaf of the spatial index.
+	 */
+	public static final int LEAF_SIZE = 128;
+
 	public static <T extends Indexable> void buildIndex(List<T> items,
-			SessionFactory sfOutput, SpatialIndexFactory factory)
+			GazetteerOutput output, SpatialIndexFactory factory)
 	{
 		IndexBuilder<T> indexBuilder = new IndexBuilder<>();
-		Node<T> root = indexBuilder.build(items, 128);
+		Node<T> root = indexBuilder.build(items, LEAF_SIZE);
 
 		List<Node<T>> leafs = indexBuilder.getLeafs(root);
 		for (int i = 0; i < leafs.size(); i++) {
@@ -43,7 +47,7 @@ public class HibernateIndexBuilder
 			Rectangle r = leaf.getEnvelope();
 			SpatialIndexItem item = factory.create(i, r.getMinX(), r.getMaxX(),
 					r.getMinY(), r.getMaxY());
-			sfOutput.getCurrentSession().persist(item);
+			output.insert(item);
 
 			List<T> leafItems = leaf.getItems();
 			for (T t : leafItems) {
@@ -0,0 +1,197 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable form of a tree of {@link FilterRule}s that is cheaper to
+ * evaluate: instead of iterating all tags of an entity, only the keys mapped
+ * by a rule are looked up, single-valued tags are looked up without splitting
+ * their values and the name keys of classes are precomputed. Evaluation
+ * allocates nothing except for tags with multiple values.
+ *
+ * The result of {@link #determine(Map, Set)} is the same as that of
+ * {@link FilterRule#determine(Map, Set)} for the rule the tree has been
+ * compiled from.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+class CompiledFilterRule
+{
+
+	final static Logger logger = LoggerFactory
+			.getLogger(CompiledFilterRule.class);
+
+	private static final String[] DEFAULT_NAME_KEYS = new String[] { "name" };
+
+	private final String key;
+	private final String value;
+	private final KeyTable[] tables;
+	private final CompiledFilterRule[] filters;
+
+	private CompiledFilterRule(String key, String value, KeyTable[] tables,
+			CompiledFilterRule[] filters)
+	{
+		this.key = key;
+		this.value = value;
+		this.tables = tables;
+		this.filters = filters;
+	}
+
+	static CompiledFilterRule compile(FilterRule rule)
+	{
+		List<KeyTable> tables = new ArrayList<>();
+		for (Map.Entry<String, KeyMapping> entry : rule.getMappings()
+				.entrySet()) {
+			Map<String, Target> targets = new HashMap<>();
+			for (Map.Entry<String, PoiClass> mapping : entry.getValue()
+					.getValueToClass().entrySet()) {
+				targets.put(mapping.getKey(), new Target(mapping.getValue()));
+			}
+			tables.add(new KeyTable(entry.getKey(), targets));
+		}
+
+		List<FilterRule> subRules = rule.getFilters();
+		CompiledFilterRule[] filters = new CompiledFilterRule[subRules
+				.size()];
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = compile(subRules.get(i));
+		}
+
+		return new CompiledFilterRule(rule.getKey(), rule.getValue(),
+				tables.toArray(new KeyTable[0]), filters);
+	}
+
+	void determine(Map<String, String> tags, Set<PoiClass> types)
+	{
+		// If no key has been set in the filter, go on anyway
+		if (key != null) {
+			String v = tags.get(key);
+			if (v == null) {
+				return;
+			}
+			if (value != null) {
+				if (v.indexOf(';') < 0) {
+					if (!v.trim().equals(value)) {
+						return;
+					}
+				} else if (!values(v).contains(value)) {
+					return;
+				}
+			}
+		}
+		// Now apply mappings and recurse to other filters
+		boolean multiple = false;
+		for (KeyTable table : tables) {
+			String v = tags.get(table.key);
+			if (v == null) {
+				continue;
+			}
+			if (v.indexOf(';') < 0) {
+				add(table.targets.get(v.trim()), tags, types);
+				continue;
+			}
+			Set<String> values = values(v);
+			if (values.size() > 1) {
+				multiple = true;
+			}
+			for (String value : values) {
+				add(table.targets.get(value), tags, types);
+			}
+		}
+		if (multiple) {
+			logger.info("Multiple values: " + tags);
+		}
+		for (CompiledFilterRule filter : filters) {
+			filter.determine(tags, types);
+		}
+	}
+
+	private static void add(Target target, Map<String, String> tags,
+			Set<PoiClass> types)
+	{
+		if (target == null) {
+			return;
+		}
+		if (!target.requiresName || hasName(target.nameKeys, tags)) {
+			types.add(target.poiClass);
+		}
+	}
+
+	private static boolean hasName(String[] nameKeys, Map<String, String> tags)
+	{
+		for (String key : nameKeys) {
+			if (tags.containsKey(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Set<String> values(String values)
+	{
+		Set<String> result = new HashSet<>();
+		String[] splitted = values.split(";");
+		for (String value : splitted) {
+			result.add(value.trim());
+		}
+		return result;
+	}
+
+	private static class KeyTable
+	{
+
+		final String key;
+		final Map<String, Target> targets;
+
+		KeyTable(String key, Map<String, Target> targets)
+		{
+			this.key = key;
+			this.targets = targets;
+		}
+
+	}
+
+	private static class Target
+	{
+
+		final PoiClass poiClass;
+		final boolean requiresName;
+		final String[] nameKeys;
+
+		Target(PoiClass poiClass)
+		{
+			this.poiClass = poiClass;
+			requiresName = poiClass.requiresName();
+			List<String> keys = poiClass.getNameKeys();
+			nameKeys = keys == null ? DEFAULT_NAME_KEYS
+					: keys.toArray(new String[0]);
+		}
+
+	}
+
+}
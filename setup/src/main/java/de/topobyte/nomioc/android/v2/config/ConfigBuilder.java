@@ -75,6 +75,8 @@ public class ConfigBuilder
 			}
 		}
 
+		pc.compile();
+
 		return pc;
 	}
 
@@ -45,6 +45,26 @@ public class FilterRule
 		this.value = value;
 	}
 
+	String getKey()
+	{
+		return key;
+	}
+
+	String getValue()
+	{
+		return value;
+	}
+
+	List<FilterRule> getFilters()
+	{
+		return filters;
+	}
+
+	Map<String, KeyMapping> getMappings()
+	{
+		return mappings;
+	}
+
 	public void add(FilterRule filter)
 	{
 		filters.add(filter);
@@ -47,4 +47,9 @@ public class KeyMapping
 		return valueToClass.get(value);
 	}
 
+	Map<String, PoiClass> getValueToClass()
+	{
+		return valueToClass;
+	}
+
 }
@@ -31,6 +31,8 @@ public class PoiConfig
 	public static String FILENAME = "pois.xml";
 
 	private FilterRule main = new FilterRule(null, null);
+	private CompiledFilterRule compiled = null;
+	private Map<String, Set<String>> mappedValues = null;
 	private Map<String, IgnoreRules> ignores = new HashMap<>();
 
 	private List<PoiClass> classes = new ArrayList<>();
@@ -63,6 +65,8 @@ public class PoiConfig
 
 	private void add(FilterRule filter, String key, String value, PoiClass pc)
 	{
+		compiled = null;
+		mappedValues = null;
 		if (pc.hasName()) {
 			addType(pc);
 		} else {
@@ -111,7 +115,78 @@ public class PoiConfig
 		return rules;
 	}
 
+	/**
+	 * Compile the filter rules into an immutable structure that is used by
+	 * {@link #determine(Map)} from now on. The tags used by
+	 * {@link #mayMatch(String, String)} are collected as well. Adding rules
+	 * discards the compiled structure, so this needs to be called again after
+	 * modifications.
+	 */
+	public void compile()
+	{
+		compiled = CompiledFilterRule.compile(main);
+		Map<String, Set<String>> values = new HashMap<>();
+		collectMappedValues(main, values);
+		mappedValues = values;
+	}
+
+	public boolean isCompiled()
+	{
+		return compiled != null;
+	}
+
 	public Set<PoiClass> determine(Map<String, String> tags)
+	{
+		Set<PoiClass> types = new HashSet<>();
+		if (compiled != null) {
+			compiled.determine(tags, types);
+		} else {
+			main.determine(tags, types);
+		}
+		return types;
+	}
+
+	/**
+	 * Check whether a tag could make an entity match one of the classes. An
+	 * entity without any such tag never matches, so that callers can reject it
+	 * without creating a map of its tags. Tags with multiple values are always
+	 * considered. Before {@link #compile()} has been called, every tag is
+	 * considered.
+	 */
+	public boolean mayMatch(String key, String value)
+	{
+		if (mappedValues == null) {
+			return true;
+		}
+		Set<String> values = mappedValues.get(key);
+		if (values == null) {
+			return false;
+		}
+		return value.indexOf(';') >= 0 || values.contains(value.trim());
+	}
+
+	private static void collectMappedValues(FilterRule rule,
+			Map<String, Set<String>> mappedValues)
+	{
+		for (Entry<String, KeyMapping> entry : rule.getMappings().entrySet()) {
+			Set<String> values = mappedValues.get(entry.getKey());
+			if (values == null) {
+				values = new HashSet<>();
+				mappedValues.put(entry.getKey(), values);
+			}
+			values.addAll(entry.getValue().getValueToClass().keySet());
+		}
+		for (FilterRule filter : rule.getFilters()) {
+			collectMappedValues(filter, mappedValues);
+		}
+	}
+
+	/**
+	 * Determine the classes by walking the tree of filter rules, whether the
+	 * configuration has been compiled or not. The result is the same as that
+	 * of {@link #determine(Map)}.
+	 */
+	public Set<PoiClass> determineInterpreted(Map<String, String> tags)
 	{
 		Set<PoiClass> types = new HashSet<>();
 		main.determine(tags, types);
@@ -134,6 +209,8 @@ public class PoiConfig
 
 	public void addFilter(FilterRule filter, FilterRule subFilter)
 	{
+		compiled = null;
+		mappedValues = null;
 		filter.add(filter);
 	}
 
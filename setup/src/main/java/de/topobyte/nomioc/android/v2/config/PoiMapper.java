@@ -31,6 +31,10 @@ import org.slf4j.LoggerFactory;
 import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
 
 /**
+ * Maps tags to POI types. Once constructed, {@link #determineTypes(Map)} may be
+ * called from multiple threads concurrently: the configuration is only read
+ * and the histogram of the {@link RestAnalyzer} is synchronized.
+ *
  * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
  *
  */
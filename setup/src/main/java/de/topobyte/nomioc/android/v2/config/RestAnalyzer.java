@@ -81,7 +81,7 @@ public class RestAnalyzer
 		}
 	}
 
-	public void addToOtherHistogram(Map<String, String> tags)
+	public synchronized void addToOtherHistogram(Map<String, String> tags)
 	{
 		tags: for (Map.Entry<String, String> tag : tags.entrySet()) {
 			String key = tag.getKey();
@@ -104,7 +104,7 @@ public class RestAnalyzer
 		}
 	}
 
-	public void analyzeOtherHistogram()
+	public synchronized void analyzeOtherHistogram()
 	{
 		List<Multiset.Entry<String>> list = MultisetUtil.entries(otherTags,
 				Order.ASCENDING, Order.ASCENDING);
@@ -41,6 +41,8 @@ import de.topobyte.nomioc.android.v2.model.hibernate.Street;
 public class AndroidSessionFactory
 {
 
+	public static final String PROPERTY_BATCH_SIZE = "hibernate.jdbc.batch_size";
+
 	private StandardServiceRegistry serviceRegistry;
 	private SessionFactory sessionFactory;
 	private Configuration cfg = new Configuration();
@@ -110,6 +112,18 @@ public class AndroidSessionFactory
 		return sessionFactory.openSession();
 	}
 
+	/**
+	 * @return the JDBC batch size configured or 0 if batching is disabled.
+	 */
+	public int getBatchSize()
+	{
+		String value = cfg.getProperty(PROPERTY_BATCH_SIZE);
+		if (value == null) {
+			return 0;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
 	/**
 	 * @return the configuration used for creating this instance.
 	 */
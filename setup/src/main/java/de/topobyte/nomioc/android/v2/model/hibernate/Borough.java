@@ -58,6 +58,11 @@ public class Borough
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public String getName()
 	{
 		return name;
@@ -57,6 +57,11 @@ public class BoroughSet
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public Set<Borough> getBoroughs()
 	{
 		return boroughs;
@@ -61,6 +61,11 @@ public class PoiType
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public String getName()
 	{
 		return name;
@@ -102,6 +102,11 @@ public class PointOfInterest
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public String getName()
 	{
 		return name;
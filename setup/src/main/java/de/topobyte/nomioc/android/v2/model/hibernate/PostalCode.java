@@ -55,6 +55,11 @@ public class PostalCode
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public String getCode()
 	{
 		return code;
@@ -57,6 +57,11 @@ public class PostalCodeSet
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public Set<PostalCode> getCodes()
 	{
 		return codes;
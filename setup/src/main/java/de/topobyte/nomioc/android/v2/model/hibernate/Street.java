@@ -91,6 +91,11 @@ public class Street implements Indexable
 		return id;
 	}
 
+	public void setId(int id)
+	{
+		this.id = id;
+	}
+
 	public String getName()
 	{
 		return name;
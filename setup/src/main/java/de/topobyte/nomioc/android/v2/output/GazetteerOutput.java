@@ -0,0 +1,61 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.output;
+
+import de.topobyte.nomioc.android.v2.model.hibernate.Borough;
+import de.topobyte.nomioc.android.v2.model.hibernate.BoroughSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
+import de.topobyte.nomioc.android.v2.model.hibernate.PointOfInterest;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexItem;
+import de.topobyte.nomioc.android.v2.model.hibernate.Street;
+
+/**
+ * The target of the entities created while building a gazetteer database.
+ * Entities are assigned their ids when being inserted, so that entities
+ * referring to them can be inserted afterwards.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public interface GazetteerOutput
+{
+
+	public void begin();
+
+	public void commit();
+
+	public void close();
+
+	public void insert(Borough borough);
+
+	public void insert(PostalCode postalCode);
+
+	public void insert(PoiType poiType);
+
+	public void insert(BoroughSet boroughSet);
+
+	public void insert(PostalCodeSet postalCodeSet);
+
+	public void insert(Street street);
+
+	public void insert(PointOfInterest poi);
+
+	public void insert(SpatialIndexItem item);
+
+}
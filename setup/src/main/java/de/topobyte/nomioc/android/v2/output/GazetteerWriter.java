@@ -0,0 +1,353 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.output;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.topobyte.nomioc.android.v2.model.hibernate.Borough;
+import de.topobyte.nomioc.android.v2.model.hibernate.BoroughSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
+import de.topobyte.nomioc.android.v2.model.hibernate.PointOfInterest;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexItem;
+import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexItemPoi;
+import de.topobyte.nomioc.android.v2.model.hibernate.Street;
+
+/**
+ * Output that writes entities to an SQLite database with batched JDBC inserts
+ * instead of going through Hibernate. The schema needs to exist already (it is
+ * still created from the Hibernate mapping).
+ *
+ * Ids are assigned by the writer, counting up from 1 per table, and rows are
+ * kept in JDBC batches only, so that no entities are retained after insertion.
+ * Since the database is built from scratch and discarded on failure, the
+ * rollback journal and syncing are turned off for the connection.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class GazetteerWriter implements GazetteerOutput
+{
+
+	private static final int BATCH_SIZE = 1000;
+
+	private Connection connection;
+
+	private List<Batch> batches = new ArrayList<>();
+
+	private Batch boroughs;
+	private Batch postalCodes;
+	private Batch poiTypes;
+	private Batch boroughSets;
+	private Batch boroughSetsBoroughs;
+	private Batch postalCodeSets;
+	private Batch postalCodeSetsCodes;
+	private Batch streets;
+	private Batch pois;
+	private Batch poisTypes;
+	private Batch siStreets;
+	private Batch siPois;
+
+	private int idBoroughs = 0;
+	private int idPostalCodes = 0;
+	private int idPoiTypes = 0;
+	private int idBoroughSets = 0;
+	private int idPostalCodeSets = 0;
+	private int idStreets = 0;
+	private int idPois = 0;
+
+	public GazetteerWriter(Path databaseFile) throws SQLException
+	{
+		this(DriverManager
+				.getConnection("jdbc:sqlite:" + databaseFile.toString()));
+	}
+
+	public GazetteerWriter(Connection connection) throws SQLException
+	{
+		this.connection = connection;
+
+		Statement statement = connection.createStatement();
+		statement.execute("PRAGMA journal_mode=OFF");
+		statement.execute("PRAGMA synchronous=OFF");
+		statement.close();
+
+		connection.setAutoCommit(false);
+
+		boroughs = batch(
+				"insert into boroughs (id, name, level) values (?, ?, ?)");
+		postalCodes = batch("insert into postalcodes (id, code) values (?, ?)");
+		poiTypes = batch("insert into poitypes (id, name) values (?, ?)");
+		boroughSets = batch("insert into borough_sets (id) values (?)");
+		boroughSetsBoroughs = batch("insert into borough_sets_boroughs"
+				+ " (borough_sets_id, boroughs_id) values (?, ?)");
+		postalCodeSets = batch("insert into postal_code_sets (id) values (?)");
+		postalCodeSetsCodes = batch("insert into postal_code_sets_postalcodes"
+				+ " (postal_code_sets_id, codes_id) values (?, ?)");
+		streets = batch("insert into streets"
+				+ " (id, name, simple_name, boroughs, postal_codes, x, y, sid)"
+				+ " values (?, ?, ?, ?, ?, ?, ?, ?)");
+		pois = batch("insert into pois"
+				+ " (id, name, simple_name, phone, website, boroughs,"
+				+ " postal_codes, x, y, sid)"
+				+ " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		poisTypes = batch(
+				"insert into pois_types (pois_id, types_id) values (?, ?)");
+		siStreets = batch("insert into si_streets"
+				+ " (id, minX, maxX, minY, maxY) values (?, ?, ?, ?, ?)");
+		siPois = batch("insert into si_pois"
+				+ " (id, minX, maxX, minY, maxY) values (?, ?, ?, ?, ?)");
+	}
+
+	private Batch batch(String sql) throws SQLException
+	{
+		Batch batch = new Batch(connection.prepareStatement(sql));
+		batches.add(batch);
+		return batch;
+	}
+
+	@Override
+	public void begin()
+	{
+		// transactions are started implicitly since auto commit is disabled
+	}
+
+	@Override
+	public void commit()
+	{
+		try {
+			for (Batch batch : batches) {
+				batch.flush();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			throw new OutputException("Error while committing", e);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		commit();
+		try {
+			for (Batch batch : batches) {
+				batch.statement.close();
+			}
+			connection.close();
+		} catch (SQLException e) {
+			throw new OutputException("Error while closing database", e);
+		}
+	}
+
+	@Override
+	public void insert(Borough borough)
+	{
+		if (borough.getId() == 0) {
+			borough.setId(++idBoroughs);
+		}
+		try {
+			PreparedStatement stmt = boroughs.statement;
+			stmt.setInt(1, borough.getId());
+			stmt.setString(2, borough.getName());
+			stmt.setInt(3, borough.getLevel());
+			boroughs.add();
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting borough", e);
+		}
+	}
+
+	@Override
+	public void insert(PostalCode postalCode)
+	{
+		if (postalCode.getId() == 0) {
+			postalCode.setId(++idPostalCodes);
+		}
+		try {
+			PreparedStatement stmt = postalCodes.statement;
+			stmt.setInt(1, postalCode.getId());
+			stmt.setString(2, postalCode.getCode());
+			postalCodes.add();
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting postal code", e);
+		}
+	}
+
+	@Override
+	public void insert(PoiType poiType)
+	{
+		if (poiType.getId() == 0) {
+			poiType.setId(++idPoiTypes);
+		}
+		try {
+			PreparedStatement stmt = poiTypes.statement;
+			stmt.setInt(1, poiType.getId());
+			stmt.setString(2, poiType.getName());
+			poiTypes.add();
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting poi type", e);
+		}
+	}
+
+	@Override
+	public void insert(BoroughSet boroughSet)
+	{
+		if (boroughSet.getId() == 0) {
+			boroughSet.setId(++idBoroughSets);
+		}
+		try {
+			boroughSets.statement.setInt(1, boroughSet.getId());
+			boroughSets.add();
+			for (Borough borough : boroughSet.getBoroughs()) {
+				PreparedStatement stmt = boroughSetsBoroughs.statement;
+				stmt.setInt(1, boroughSet.getId());
+				stmt.setInt(2, borough.getId());
+				boroughSetsBoroughs.add();
+			}
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting borough set", e);
+		}
+	}
+
+	@Override
+	public void insert(PostalCodeSet postalCodeSet)
+	{
+		if (postalCodeSet.getId() == 0) {
+			postalCodeSet.setId(++idPostalCodeSets);
+		}
+		try {
+			postalCodeSets.statement.setInt(1, postalCodeSet.getId());
+			postalCodeSets.add();
+			for (PostalCode code : postalCodeSet.getCodes()) {
+				PreparedStatement stmt = postalCodeSetsCodes.statement;
+				stmt.setInt(1, postalCodeSet.getId());
+				stmt.setInt(2, code.getId());
+				postalCodeSetsCodes.add();
+			}
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting postal code set",
+					e);
+		}
+	}
+
+	@Override
+	public void insert(Street street)
+	{
+		if (street.getId() == 0) {
+			street.setId(++idStreets);
+		}
+		try {
+			PreparedStatement stmt = streets.statement;
+			stmt.setInt(1, street.getId());
+			stmt.setString(2, street.getName());
+			stmt.setString(3, street.getSimpleName());
+			stmt.setInt(4, street.getBoroughSet().getId());
+			stmt.setInt(5, street.getPostalCodeSet().getId());
+			stmt.setInt(6, street.getX());
+			stmt.setInt(7, street.getY());
+			stmt.setInt(8, street.getSid());
+			streets.add();
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting street", e);
+		}
+	}
+
+	@Override
+	public void insert(PointOfInterest poi)
+	{
+		if (poi.getId() == 0) {
+			poi.setId(++idPois);
+		}
+		try {
+			PreparedStatement stmt = pois.statement;
+			stmt.setInt(1, poi.getId());
+			stmt.setString(2, poi.getName());
+			stmt.setString(3, poi.getSimpleName());
+			stmt.setString(4, poi.getPhone());
+			stmt.setString(5, poi.getWebsite());
+			stmt.setInt(6, poi.getBoroughSet().getId());
+			stmt.setInt(7, poi.getPostalCodeSet().getId());
+			stmt.setInt(8, (int) poi.getX());
+			stmt.setInt(9, (int) poi.getY());
+			stmt.setInt(10, poi.getSid());
+			pois.add();
+			for (PoiType type : poi.getTypes()) {
+				stmt = poisTypes.statement;
+				stmt.setInt(1, poi.getId());
+				stmt.setInt(2, type.getId());
+				poisTypes.add();
+			}
+		} catch (SQLException e) {
+			throw new OutputException("Error while inserting poi", e);
+		}
+	}
+
+	@Override
+	public void insert(SpatialIndexItem item)
+	{
+		Batch batch = item instanceof SpatialIndexItemPoi ? siPois : siStreets;
+		try {
+			PreparedStatement stmt = batch.statement;
+			stmt.setInt(1, item.getId());
+			stmt.setInt(2, item.getMinX());
+			stmt.setInt(3, item.getMaxX());
+			stmt.setInt(4, item.getMinY());
+			stmt.setInt(5, item.getMaxY());
+			batch.add();
+		} catch (SQLException e) {
+			throw new OutputException(
+					"Error while inserting spatial index item", e);
+		}
+	}
+
+	private static class Batch
+	{
+
+		private PreparedStatement statement;
+		private int size = 0;
+
+		Batch(PreparedStatement statement)
+		{
+			this.statement = statement;
+		}
+
+		void add() throws SQLException
+		{
+			statement.addBatch();
+			if (++size >= BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		void flush() throws SQLException
+		{
+			if (size == 0) {
+				return;
+			}
+			statement.executeBatch();
+			size = 0;
+		}
+
+	}
+
+}
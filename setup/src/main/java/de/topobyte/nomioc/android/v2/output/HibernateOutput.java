@@ -0,0 +1,153 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.output;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import de.topobyte.nomioc.android.v2.model.hibernate.Borough;
+import de.topobyte.nomioc.android.v2.model.hibernate.BoroughSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
+import de.topobyte.nomioc.android.v2.model.hibernate.PointOfInterest;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
+import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
+import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexItem;
+import de.topobyte.nomioc.android.v2.model.hibernate.Street;
+
+/**
+ * Output that persists entities within the current session of a Hibernate
+ * session factory.
+ *
+ * If a flush interval is specified, the session is flushed and cleared after
+ * that many insertions so that the session does not hold on to all entities
+ * inserted during a transaction. Entities inserted earlier may still be
+ * referenced by entities inserted later, as detached instances. Note that
+ * Hibernate does not batch inserts for entities with identity generated ids,
+ * so the flush interval limits memory use but does not reduce the number of
+ * statements.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class HibernateOutput implements GazetteerOutput
+{
+
+	private SessionFactory sfOutput;
+	private int flushInterval;
+
+	private int pending = 0;
+
+	public HibernateOutput(SessionFactory sfOutput)
+	{
+		this(sfOutput, 0);
+	}
+
+	/**
+	 * @param flushInterval
+	 *            the number of insertions after which to flush and clear the
+	 *            session, no periodic flushing if not positive.
+	 */
+	public HibernateOutput(SessionFactory sfOutput, int flushInterval)
+	{
+		this.sfOutput = sfOutput;
+		this.flushInterval = flushInterval;
+	}
+
+	private void persist(Object object)
+	{
+		Session session = session();
+		session.persist(object);
+		if (flushInterval > 0 && ++pending >= flushInterval) {
+			session.flush();
+			session.clear();
+			pending = 0;
+		}
+	}
+
+	private Session session()
+	{
+		return sfOutput.getCurrentSession();
+	}
+
+	@Override
+	public void begin()
+	{
+		session().beginTransaction();
+	}
+
+	@Override
+	public void commit()
+	{
+		session().getTransaction().commit();
+		pending = 0;
+	}
+
+	@Override
+	public void close()
+	{
+		sfOutput.close();
+	}
+
+	@Override
+	public void insert(Borough borough)
+	{
+		persist(borough);
+	}
+
+	@Override
+	public void insert(PostalCode postalCode)
+	{
+		persist(postalCode);
+	}
+
+	@Override
+	public void insert(PoiType poiType)
+	{
+		persist(poiType);
+	}
+
+	@Override
+	public void insert(BoroughSet boroughSet)
+	{
+		persist(boroughSet);
+	}
+
+	@Override
+	public void insert(PostalCodeSet postalCodeSet)
+	{
+		persist(postalCodeSet);
+	}
+
+	@Override
+	public void insert(Street street)
+	{
+		persist(street);
+	}
+
+	@Override
+	public void insert(PointOfInterest poi)
+	{
+		persist(poi);
+	}
+
+	@Override
+	public void insert(SpatialIndexItem item)
+	{
+		persist(item);
+	}
+
+}
@@ -0,0 +1,295 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.poi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import de.topobyte.nomioc.HilbertCurve;
+import de.topobyte.nomioc.android.v2.config.PoiMapper;
+import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
+
+/**
+ * Sorts POI candidates by the position of their mercator coordinates on a
+ * Hilbert curve using bounded memory. Candidates are buffered up to a fixed
+ * number, then sorted and written to a run file in a compact binary format.
+ * The sorted sequence is produced by merging the runs and can be read
+ * multiple times.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+class ExternalPoiSorter implements Closeable
+{
+
+	/**
+	 * A sequence of candidates.
+	 */
+	interface PoiStream extends Closeable
+	{
+
+		/**
+		 * @return the next candidate or null at the end of the sequence.
+		 */
+		Poi next() throws IOException;
+
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Path directory;
+	private int runSize;
+	private PoiMapper poiMapper;
+
+	private List<Poi> buffer = new ArrayList<>();
+	private List<Path> runs = new ArrayList<>();
+	private List<Integer> runSizes = new ArrayList<>();
+	private long size = 0;
+
+	/**
+	 * @param directory
+	 *            where to create run files.
+	 * @param runSize
+	 *            the number of candidates to sort in memory at once.
+	 */
+	ExternalPoiSorter(Path directory, int runSize, PoiMapper poiMapper)
+	{
+		this.directory = directory;
+		this.runSize = runSize;
+		this.poiMapper = poiMapper;
+	}
+
+	static long key(Poi poi)
+	{
+		return HilbertCurve.position(poi.mx, poi.my);
+	}
+
+	private static Comparator<Poi> order = Comparator
+			.comparingLong(ExternalPoiSorter::key);
+
+	long size()
+	{
+		return size;
+	}
+
+	void add(Poi poi) throws IOException
+	{
+		buffer.add(poi);
+		size++;
+		if (buffer.size() >= runSize) {
+			writeRun();
+		}
+	}
+
+	private void writeRun() throws IOException
+	{
+		buffer.sort(order);
+		Path file = Files.createTempFile(directory, "pois", ".run");
+		runs.add(file);
+		runSizes.add(buffer.size());
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file),
+						BUFFER_SIZE))) {
+			for (Poi poi : buffer) {
+				write(out, poi);
+			}
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Open the sorted sequence of all candidates added so far.
+	 */
+	PoiStream stream() throws IOException
+	{
+		if (runs.isEmpty()) {
+			buffer.sort(order);
+			List<Poi> sorted = buffer;
+			return new PoiStream() {
+
+				private int next = 0;
+
+				@Override
+				public Poi next()
+				{
+					return next < sorted.size() ? sorted.get(next++) : null;
+				}
+
+				@Override
+				public void close()
+				{
+					// nothing to do
+				}
+
+			};
+		}
+		if (!buffer.isEmpty()) {
+			writeRun();
+		}
+		return new MergeStream();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		buffer.clear();
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+		runSizes.clear();
+	}
+
+	private class MergeStream implements PoiStream
+	{
+
+		private List<RunReader> readers = new ArrayList<>();
+		private PriorityQueue<RunReader> queue = new PriorityQueue<>(
+				Comparator.comparingLong((RunReader reader) -> reader.key));
+
+		MergeStream() throws IOException
+		{
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), runSizes.get(i));
+				readers.add(reader);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+		}
+
+		@Override
+		public Poi next() throws IOException
+		{
+			RunReader reader = queue.poll();
+			if (reader == null) {
+				return null;
+			}
+			Poi poi = reader.current;
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+			return poi;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			for (RunReader reader : readers) {
+				reader.input.close();
+			}
+		}
+
+	}
+
+	private class RunReader
+	{
+
+		private DataInputStream input;
+		private int remaining;
+		private Poi current;
+		private long key;
+
+		RunReader(Path file, int size) throws IOException
+		{
+			input = new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(file), BUFFER_SIZE));
+			remaining = size;
+		}
+
+		boolean advance() throws IOException
+		{
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			remaining--;
+			current = read(input);
+			key = key(current);
+			return true;
+		}
+
+	}
+
+	/*
+	 * Record format
+	 */
+
+	private static void write(DataOutputStream out, Poi poi)
+			throws IOException
+	{
+		writeString(out, poi.name);
+		out.writeDouble(poi.lon);
+		out.writeDouble(poi.lat);
+		writeString(out, poi.elevation);
+		writeString(out, poi.phone);
+		writeString(out, poi.website);
+		writeString(out, poi.street);
+		out.writeShort(poi.types.size());
+		for (PoiType type : poi.types) {
+			out.writeUTF(type.getName());
+		}
+	}
+
+	private Poi read(DataInputStream in) throws IOException
+	{
+		String name = readString(in);
+		double lon = in.readDouble();
+		double lat = in.readDouble();
+		String elevation = readString(in);
+		String phone = readString(in);
+		String website = readString(in);
+		String street = readString(in);
+		int numTypes = in.readShort();
+		Set<PoiType> types = new HashSet<>();
+		for (int i = 0; i < numTypes; i++) {
+			types.add(poiMapper.getPoiType(in.readUTF()));
+		}
+		return new PointPoi(name, lon, lat, types, elevation, phone, website,
+				street);
+	}
+
+	private static void writeString(DataOutputStream out, String string)
+			throws IOException
+	{
+		out.writeBoolean(string != null);
+		if (string != null) {
+			out.writeUTF(string);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		if (!in.readBoolean()) {
+			return null;
+		}
+		return in.readUTF();
+	}
+
+}
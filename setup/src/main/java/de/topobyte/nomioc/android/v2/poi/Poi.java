@@ -20,6 +20,8 @@ package de.topobyte.nomioc.android.v2.poi;
 import java.util.Map;
 import java.util.Set;
 
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 
 import de.topobyte.mercatorcoordinates.GeoConv;
@@ -27,13 +29,30 @@ import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
 import de.topobyte.sqlitespatial.spatialindex.builder.Indexable;
 import de.topobyte.sqlitespatial.spatialindex.builder.Node;
 
+/**
+ * A POI candidate. Instead of the entity's tags, only the values needed for
+ * creating the database entity are retained, which keeps the memory needed
+ * for holding all candidates of large extracts low. For the same reason, the
+ * location is stored as plain coordinates and only turned into a geometry
+ * when needed (see {@link #getPoint()}).
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
 public class Poi implements Indexable
 {
+	private static final GeometryFactory factory = new GeometryFactory();
+
 	String name;
-	Point point;
-	Map<String, String> tags;
+	double lon;
+	double lat;
 	Set<PoiType> types;
 
+	// Projected tag values
+	String elevation;
+	String phone;
+	String website;
+	String street;
+
 	int mx;
 	int my;
 
@@ -44,11 +63,41 @@ public class Poi implements Indexable
 			Set<PoiType> types)
 	{
 		this.name = name;
-		this.point = point;
-		this.tags = tags;
+		lon = point.getX();
+		lat = point.getY();
+		this.types = types;
+		elevation = tags.get("ele");
+		phone = get(tags, "contact:phone", "phone");
+		website = get(tags, "contact:website", "website");
+		street = tags.get("addr:street");
+		mx = GeoConv.mercatorFromLongitude(lon);
+		my = GeoConv.mercatorFromLatitude(lat);
+	}
+
+	/**
+	 * Create a candidate from values that have already been projected.
+	 */
+	Poi(String name, double lon, double lat, Set<PoiType> types,
+			String elevation, String phone, String website, String street)
+	{
+		this.name = name;
+		this.lon = lon;
+		this.lat = lat;
 		this.types = types;
-		mx = GeoConv.mercatorFromLongitude(point.getX());
-		my = GeoConv.mercatorFromLatitude(point.getY());
+		this.elevation = elevation;
+		this.phone = phone;
+		this.website = website;
+		this.street = street;
+		mx = GeoConv.mercatorFromLongitude(lon);
+		my = GeoConv.mercatorFromLatitude(lat);
+	}
+
+	/**
+	 * Create a point geometry for the location of the candidate.
+	 */
+	public Point getPoint()
+	{
+		return factory.createPoint(new Coordinate(lon, lat));
 	}
 
 	@Override
@@ -81,6 +130,15 @@ public class Poi implements Indexable
 		this.sid = sid;
 	}
 
+	private static String get(Map<String, String> tags, String key1,
+			String key2)
+	{
+		if (tags.containsKey(key1)) {
+			return tags.get(key1);
+		}
+		return tags.get(key2);
+	}
+
 	public boolean wantsName()
 	{
 		for (PoiType type : types) {
@@ -17,16 +17,26 @@
 
 package de.topobyte.nomioc.android.v2.poi;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
-import org.hibernate.SessionFactory;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.LinearRing;
@@ -40,10 +50,9 @@ import de.topobyte.adt.multicollections.HashMultiSet;
 import de.topobyte.adt.multicollections.MultiSet;
 import de.topobyte.diacritic.IDiacriticUtil;
 import de.topobyte.diacritic.NormalizerDiacriticUtil;
-import de.topobyte.jts.indexing.GeometryTesselationMap;
 import de.topobyte.jts.indexing.NearestNeighbourTesselation;
 import de.topobyte.jts.indexing.NearestNeighbourTesselation.Entry;
-import de.topobyte.nomioc.HibernateIndexBuilder;
+import de.topobyte.nomioc.SpatialIndexBuilder;
 import de.topobyte.nomioc.android.v2.config.MappingResult;
 import de.topobyte.nomioc.android.v2.config.PoiMapper;
 import de.topobyte.nomioc.android.v2.model.hibernate.Borough;
@@ -53,6 +62,8 @@ import de.topobyte.nomioc.android.v2.model.hibernate.PointOfInterest;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
 import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexFactoryPoi;
+import de.topobyte.nomioc.android.v2.output.GazetteerOutput;
+import de.topobyte.nomioc.android.v2.poi.ExternalPoiSorter.PoiStream;
 import de.topobyte.nomioc.android.v2.regions.Regions;
 import de.topobyte.nomioc.android.v2.street.StreetBuilder;
 import de.topobyte.nomioc.elevation.ElevationParser;
@@ -66,6 +77,25 @@ import de.topobyte.osm4j.core.model.iface.OsmWay;
 import de.topobyte.osm4j.geometry.OsmEntityGeometryHandler;
 
 /**
+ * Collects POI candidates from the processed entities and writes them to the
+ * output.
+ *
+ * Preparing the candidates of an entity, i.e. cleaning polygon geometries,
+ * computing centroids and determining POI types, can be done on a pool of
+ * worker threads (see {@link #setThreads(int)}). Entities are then handed to
+ * the workers in batches and the resulting candidates are collected in the
+ * order of the input, so that the result does not depend on the number of
+ * threads. The tag preprocessor is not required to be thread-safe, it always
+ * runs on the calling thread before an entity is handed to the workers.
+ *
+ * By default, all candidates are kept in memory until {@link #buildPois()} is
+ * called. In external mode (see {@link #setExternalDirectory(Path)}), point
+ * candidates are spilled to disk in runs sorted along a Hilbert curve instead.
+ * Only polygon candidates stay in memory, since their geometries are needed
+ * for detecting overlaps. The spatial index is then built by packing the
+ * merged sequence of points and polygons into leaves, while POIs are inserted
+ * as they are read.
+ *
  * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
  *
  */
@@ -73,7 +103,7 @@ public class PoiCreator implements OsmEntityGeometryHandler
 {
 	static final Logger logger = LoggerFactory.getLogger(PoiCreator.class);
 
-	private final SessionFactory sfOutput;
+	private final GazetteerOutput output;
 	private IDiacriticUtil diacritic = new NormalizerDiacriticUtil();
 
 	private PoiMapper poiMapper;
@@ -86,48 +116,101 @@ public class PoiCreator implements OsmEntityGeometryHandler
 
 	private List<Poi> allPois = new ArrayList<>();
 	private List<PointPoi> pointCandidates = new ArrayList<>();
-	private Set<PolygonPoi> polygonCandidates = new HashSet<>();
-	private GeometryTesselationMap<PolygonPoi> polygonIndex = new GeometryTesselationMap<>(
-			false);
+	private List<PolygonPoi> polygonCandidates = new ArrayList<>();
+	// Named polygon candidates by name, for detecting overlaps with points
+	private Map<String, List<PolygonPoi>> polygonsByName = new HashMap<>();
 
 	private int nameMaxLength;
 
 	private TagChanger tagPreprocessor;
 
+	// Shared instances of equal names, street names and sets of types
+	private Map<String, String> strings = new HashMap<>();
+	private Map<Set<PoiType>, Set<PoiType>> typeSets = new HashMap<>();
+
 	private ElevationParser elevationParser = new ElevationParser();
 	private ValueFormatter elevationFormatter = new ValueFormatter(1);
 
-	public PoiCreator(SessionFactory sfOutput, Regions regions,
+	/**
+	 * The number of entities handed to a worker at once.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	private int threads = 1;
+	private ExecutorService executor = null;
+	private List<Supplier<List<Poi>>> batch = new ArrayList<>();
+	private Deque<Future<List<Poi>>> pending = new ArrayDeque<>();
+
+	/**
+	 * The number of point candidates sorted in memory at once in external
+	 * mode.
+	 */
+	private static final int RUN_SIZE = 1 << 18;
+
+	private Path externalDirectory = null;
+	private ExternalPoiSorter pointSorter = null;
+
+	public PoiCreator(GazetteerOutput output, Regions regions,
 			Map<Set<Borough>, BoroughSet> boroughSets,
 			Map<Set<PostalCode>, PostalCodeSet> postalCodeSets,
-			PoiMapper poiMapper,
-			NearestNeighbourTesselation<String> streetNameMap,
-			int nameMaxLength, TagChanger tagPreprocessor)
+			PoiMapper poiMapper, int nameMaxLength, TagChanger tagPreprocessor)
 	{
-		this.sfOutput = sfOutput;
+		this.output = output;
 		this.regions = regions;
 		this.boroughSets = boroughSets;
 		this.postalCodeSets = postalCodeSets;
 		this.poiMapper = poiMapper;
-		this.streetNameMap = streetNameMap;
 		this.nameMaxLength = nameMaxLength;
 		this.tagPreprocessor = tagPreprocessor;
 	}
 
+	/**
+	 * Set the lookup for names of streets nearby POIs. Since the streets are
+	 * built from the same pass over the input as the POI candidates, this needs
+	 * to be called after processing and before {@link #buildPois()}.
+	 */
+	public void setStreetNameMap(
+			NearestNeighbourTesselation<String> streetNameMap)
+	{
+		this.streetNameMap = streetNameMap;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Set the number of worker threads used for preparing POI candidates. With
+	 * a single thread, candidates are prepared on the calling thread.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public Path getExternalDirectory()
+	{
+		return externalDirectory;
+	}
+
+	/**
+	 * Enable external mode, storing point candidates in temporary files in the
+	 * specified directory instead of memory. Pass null to keep all candidates
+	 * in memory (the default). Needs to be called before processing.
+	 */
+	public void setExternalDirectory(Path externalDirectory)
+	{
+		this.externalDirectory = externalDirectory;
+	}
+
 	@Override
 	public void processNode(OsmNode node, Point point, Map<String, String> tags)
 	{
 		if (tagPreprocessor != null) {
 			tagPreprocessor.node(point, tags);
 		}
-
-		List<MappingResult> results = poiMapper.determineTypes(tags);
-		if (results.isEmpty()) {
-			return;
-		}
-		for (MappingResult mr : results) {
-			point(mr.getName(), point, tags, mr.getTypes());
-		}
+		submit(() -> node(point, tags));
 	}
 
 	@Override
@@ -139,28 +222,10 @@ public class PoiCreator implements OsmEntityGeometryHandler
 		}
 
 		if (string.isClosed() && string.getNumPoints() > 3) {
-			LinearRing ring = string.getFactory()
-					.createLinearRing(string.getCoordinates());
-			Polygon weak = ring.getFactory().createPolygon(ring, null);
-			Geometry buffer = weak.buffer(0);
-			if (!(buffer instanceof Polygon)) {
-				logger.warn("Buffer is not a polygon");
-				return;
-			}
-			Polygon polygon = (Polygon) buffer;
-			Point centroid = polygon.getCentroid();
-
 			if (tagPreprocessor != null) {
 				tagPreprocessor.way(string, tags);
 			}
-
-			List<MappingResult> results = poiMapper.determineTypes(tags);
-			if (results.isEmpty()) {
-				return;
-			}
-			for (MappingResult mr : results) {
-				polygonal(mr.getName(), polygon, tags, centroid, mr.getTypes());
-			}
+			submit(() -> way(string, tags));
 		}
 	}
 
@@ -188,66 +253,371 @@ public class PoiCreator implements OsmEntityGeometryHandler
 		if (tagPreprocessor != null) {
 			tagPreprocessor.polygon(polygon, tags);
 		}
+		submit(() -> multipolygon(polygon, tags, centroid));
+	}
+
+	/*
+	 * Preparation of candidates from preprocessed tags, possibly executed on
+	 * worker threads
+	 */
 
+	private List<Poi> node(Point point, Map<String, String> tags)
+	{
+		List<Poi> pois = new ArrayList<>();
 		List<MappingResult> results = poiMapper.determineTypes(tags);
-		if (results.isEmpty()) {
-			return;
+		for (MappingResult mr : results) {
+			pois.add(new PointPoi(mr.getName(), point, tags, mr.getTypes()));
+		}
+		return pois;
+	}
+
+	private List<Poi> way(LineString string, Map<String, String> tags)
+	{
+		List<Poi> pois = new ArrayList<>();
+
+		LinearRing ring = string.getFactory()
+				.createLinearRing(string.getCoordinates());
+		Polygon weak = ring.getFactory().createPolygon(ring, null);
+		Geometry buffer = weak.buffer(0);
+		if (!(buffer instanceof Polygon)) {
+			logger.warn("Buffer is not a polygon");
+			return pois;
 		}
+		Polygon polygon = (Polygon) buffer;
+		Point centroid = polygon.getCentroid();
+
+		List<MappingResult> results = poiMapper.determineTypes(tags);
 		for (MappingResult mr : results) {
-			polygonal(mr.getName(), polygon, tags, centroid, mr.getTypes());
+			polygonal(pois, mr.getName(), polygon, tags, centroid,
+					mr.getTypes());
 		}
+		return pois;
 	}
 
-	private void point(String name, Point point, Map<String, String> tags,
-			Set<PoiType> types)
+	private List<Poi> multipolygon(MultiPolygon polygon,
+			Map<String, String> tags, Point centroid)
 	{
-		pointCandidates.add(new PointPoi(name, point, tags, types));
+		List<Poi> pois = new ArrayList<>();
+		List<MappingResult> results = poiMapper.determineTypes(tags);
+		for (MappingResult mr : results) {
+			polygonal(pois, mr.getName(), polygon, tags, centroid,
+					mr.getTypes());
+		}
+		return pois;
 	}
 
-	private void polygonal(String name, Geometry polygon,
+	private void polygonal(List<Poi> pois, String name, Geometry polygon,
 			Map<String, String> tags, Point centroid, Set<PoiType> types)
 	{
 		if (centroid.isEmpty()) {
 			logger.warn("Empty polygon centroid: " + tags);
 			return;
 		}
-		PolygonPoi poi = new PolygonPoi(name, polygon, centroid, tags, types);
-		polygonCandidates.add(poi);
-		polygonIndex.add(polygon, poi);
+		pois.add(new PolygonPoi(name, polygon, centroid, tags, types));
+	}
+
+	/*
+	 * Distribution of work and collection of candidates
+	 */
+
+	private void submit(Supplier<List<Poi>> task)
+	{
+		if (threads <= 1) {
+			add(task.get());
+			return;
+		}
+		batch.add(task);
+		if (batch.size() == BATCH_SIZE) {
+			submitBatch();
+		}
+	}
+
+	private void submitBatch()
+	{
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads);
+		}
+		List<Supplier<List<Poi>>> tasks = batch;
+		batch = new ArrayList<>();
+		pending.add(executor.submit(() -> {
+			List<Poi> pois = new ArrayList<>();
+			for (Supplier<List<Poi>> task : tasks) {
+				pois.addAll(task.get());
+			}
+			return pois;
+		}));
+		// Bound the number of batches in flight and collect in order
+		while (pending.size() > 2 * threads) {
+			add(await(pending.removeFirst()));
+		}
+	}
+
+	/**
+	 * Wait for outstanding batches and stop the worker threads.
+	 */
+	private void finishCandidates()
+	{
+		if (!batch.isEmpty()) {
+			submitBatch();
+		}
+		while (!pending.isEmpty()) {
+			add(await(pending.removeFirst()));
+		}
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private List<Poi> await(Future<List<Poi>> future)
+	{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(
+					"Interrupted while preparing POI candidates", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Error while preparing POI candidates",
+					e.getCause());
+		}
+	}
+
+	private void add(List<Poi> pois)
+	{
+		for (Poi poi : pois) {
+			if (poi instanceof PolygonPoi) {
+				intern(poi);
+				PolygonPoi polygonPoi = (PolygonPoi) poi;
+				polygonCandidates.add(polygonPoi);
+				if (polygonPoi.name != null) {
+					polygonsByName
+							.computeIfAbsent(polygonPoi.name,
+									k -> new ArrayList<>(1))
+							.add(polygonPoi);
+				}
+			} else if (externalDirectory != null) {
+				spill(poi);
+			} else {
+				intern(poi);
+				pointCandidates.add((PointPoi) poi);
+			}
+		}
+	}
+
+	private void spill(Poi poi)
+	{
+		if (pointSorter == null) {
+			pointSorter = new ExternalPoiSorter(externalDirectory, RUN_SIZE,
+					poiMapper);
+		}
+		try {
+			pointSorter.add(poi);
+		} catch (IOException e) {
+			throw new UncheckedIOException(
+					"Error while storing point candidates", e);
+		}
+	}
+
+	/**
+	 * Replace names, street names and sets of types of the candidate with
+	 * shared instances. Sets of types must not be modified afterwards. Phone
+	 * numbers and websites are almost always unique, so sharing them would
+	 * only cost a map entry per value.
+	 */
+	private void intern(Poi poi)
+	{
+		poi.name = intern(poi.name);
+		poi.street = intern(poi.street);
+		Set<PoiType> types = typeSets.get(poi.types);
+		if (types == null) {
+			typeSets.put(poi.types, poi.types);
+		} else {
+			poi.types = types;
+		}
+	}
+
+	private String intern(String string)
+	{
+		if (string == null) {
+			return null;
+		}
+		String interned = strings.get(string);
+		if (interned == null) {
+			strings.put(string, string);
+			return string;
+		}
+		return interned;
 	}
 
 	public void buildPois()
 	{
+		finishCandidates();
+		strings.clear();
+		typeSets.clear();
+
+		long numPoints = pointCandidates.size();
+		if (pointSorter != null) {
+			numPoints = pointSorter.size();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		logger.info(String.format(
+				"%d point and %d polygon candidates, heap used: %d MiB",
+				numPoints, polygonCandidates.size(),
+				(runtime.totalMemory() - runtime.freeMemory()) >> 20));
+
+		if (externalDirectory != null) {
+			try {
+				buildPoisExternal();
+			} catch (IOException e) {
+				throw new UncheckedIOException(
+						"Error while reading point candidates", e);
+			}
+			return;
+		}
+
 		removeOverlappingPolygons();
 
 		allPois.addAll(pointCandidates);
-		allPois.addAll(polygonCandidates);
+		addRemaining(allPois, polygonCandidates);
+		polygonCandidates.clear();
+		polygonsByName.clear();
 		analyse(allPois);
 
-		HibernateIndexBuilder.buildIndex(allPois, sfOutput,
+		SpatialIndexBuilder.buildIndex(allPois, output,
 				new SpatialIndexFactoryPoi());
 
 		insertPois();
 	}
 
-	private void removeOverlappingPolygons()
+	private void buildPoisExternal() throws IOException
 	{
-		for (PointPoi poi : pointCandidates) {
-			String name1 = poi.name;
-			if (name1 == null) {
-				continue;
+		if (pointSorter == null) {
+			pointSorter = new ExternalPoiSorter(externalDirectory, RUN_SIZE,
+					poiMapper);
+		}
+
+		// First pass: determine polygons covered by points of the same name
+		try (PoiStream points = pointSorter.stream()) {
+			Poi point;
+			while ((point = points.next()) != null) {
+				absorbOverlapping(point, true);
 			}
-			Set<PolygonPoi> overlapping = polygonIndex.covering(poi.point);
-			for (PolygonPoi overlap : overlapping) {
-				String name2 = overlap.name;
-				if (name2 == null) {
-					continue;
+		}
+
+		logger.info("skipping analysis of names in external mode");
+
+		List<Poi> polygons = new ArrayList<>();
+		addRemaining(polygons, polygonCandidates);
+		polygonCandidates.clear();
+		polygons.sort(Comparator.comparingLong(ExternalPoiSorter::key));
+
+		/*
+		 * Second pass: merge points and polygons in the order of the Hilbert
+		 * curve, pack consecutive candidates into leaves of the spatial index
+		 * and insert them.
+		 */
+		SpatialIndexFactoryPoi factory = new SpatialIndexFactoryPoi();
+		List<Poi> leaf = new ArrayList<>(SpatialIndexBuilder.LEAF_SIZE);
+		int leafIndex = 0;
+		try (PoiStream points = pointSorter.stream()) {
+			Poi point = points.next();
+			int p = 0;
+			while (point != null || p < polygons.size()) {
+				Poi next;
+				if (point != null && (p == polygons.size()
+						|| ExternalPoiSorter.key(point) <= ExternalPoiSorter
+								.key(polygons.get(p)))) {
+					// Types are not stored with the points, add them again
+					absorbOverlapping(point, false);
+					next = point;
+					point = points.next();
+				} else {
+					next = polygons.get(p++);
 				}
-				if (name1.equals(name2)) {
-					logger.info("Removing overlapping polygon: " + poi.tags);
-					poi.types.addAll(overlap.types);
-					polygonCandidates.remove(overlap);
+				leaf.add(next);
+				if (leaf.size() == SpatialIndexBuilder.LEAF_SIZE) {
+					insertLeaf(factory, leafIndex++, leaf);
+					leaf.clear();
+				}
+			}
+		}
+		if (!leaf.isEmpty()) {
+			insertLeaf(factory, leafIndex++, leaf);
+		}
+
+		pointSorter.close();
+		pointSorter = null;
+		polygonsByName.clear();
+	}
+
+	private void insertLeaf(SpatialIndexFactoryPoi factory, int id,
+			List<Poi> pois)
+	{
+		int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+		for (Poi poi : pois) {
+			minX = Math.min(minX, poi.mx);
+			maxX = Math.max(maxX, poi.mx);
+			minY = Math.min(minY, poi.my);
+			maxY = Math.max(maxY, poi.my);
+		}
+		output.insert(factory.create(id, minX, maxX, minY, maxY));
+		for (Poi poi : pois) {
+			poi.setSid(id);
+			createAndInsert(poi);
+		}
+	}
+
+	private static void addRemaining(List<Poi> pois,
+			List<PolygonPoi> polygons)
+	{
+		for (PolygonPoi polygon : polygons) {
+			if (!polygon.removed) {
+				pois.add(polygon);
+			}
+		}
+	}
+
+	private void removeOverlappingPolygons()
+	{
+		for (PointPoi poi : pointCandidates) {
+			absorbOverlapping(poi, true);
+		}
+	}
+
+	/**
+	 * Add the types of polygons with the same name as the point that cover the
+	 * point to the point's types.
+	 *
+	 * Polygons are looked up by name first, so that only the few polygons of
+	 * the same name need to be tested for containment of the point.
+	 *
+	 * @param remove
+	 *            whether to mark those polygons as removed from the
+	 *            candidates.
+	 */
+	private void absorbOverlapping(Poi poi, boolean remove)
+	{
+		String name = poi.name;
+		if (name == null) {
+			return;
+		}
+		List<PolygonPoi> sameName = polygonsByName.get(name);
+		if (sameName == null) {
+			return;
+		}
+		Point point = poi.getPoint();
+		for (PolygonPoi overlap : sameName) {
+			if (overlap.covers(point)) {
+				if (remove) {
+					logger.info("Removing overlapping polygon: " + name);
+					overlap.removed = true;
 				}
+				// Type sets are shared among candidates, copy on write
+				Set<PoiType> types = new HashSet<>(poi.types);
+				types.addAll(overlap.types);
+				poi.types = types;
 			}
 		}
 	}
@@ -298,26 +668,24 @@ public class PoiCreator implements OsmEntityGeometryHandler
 
 	private void clarify(Poi poi)
 	{
-		Map<String, String> tags = copyTags(poi.tags);
-		String street = poi.tags.get("addr:street");
+		String street = poi.street;
 		if (street != null) {
-			updateName(tags, street);
+			updateName(poi, street);
 		} else {
-			String nearestStreet = locateNearestStreet(poi.point);
+			String nearestStreet = locateNearestStreet(poi.getPoint());
 			if (nearestStreet != null) {
-				updateName(tags, nearestStreet);
+				updateName(poi, nearestStreet);
 			} else {
 				System.out.println("no change possible: " + poi.name);
 			}
 		}
-		poi.tags = tags;
 	}
 
-	private void updateName(Map<String, String> tags, String street)
+	private void updateName(Poi poi, String street)
 	{
-		String oldName = tags.get("name");
+		String oldName = poi.name;
 		String newName = oldName + " (" + street + ")";
-		tags.put("name", newName);
+		poi.name = newName;
 		System.out.println("changed: '" + oldName + "' to '" + newName + "'");
 	}
 
@@ -337,15 +705,6 @@ public class PoiCreator implements OsmEntityGeometryHandler
 		return name;
 	}
 
-	private Map<String, String> copyTags(Map<String, String> tags)
-	{
-		Map<String, String> copy = new HashMap<>();
-		for (String key : tags.keySet()) {
-			copy.put(key, tags.get(key));
-		}
-		return copy;
-	}
-
 	private void insertPois()
 	{
 		for (Poi poi : allPois) {
@@ -363,7 +722,7 @@ public class PoiCreator implements OsmEntityGeometryHandler
 			name = poi.name;
 		}
 		if (isPeakOrVolcano(poi)) {
-			String elevation = poi.tags.get("ele");
+			String elevation = poi.elevation;
 			String formatted = null;
 			if (elevation != null) {
 				Value value = elevationParser.parse(elevation);
@@ -376,8 +735,8 @@ public class PoiCreator implements OsmEntityGeometryHandler
 			logger.info(
 					"Peak/Volcano. Name: '" + name + "', Height: " + formatted);
 		} else if (useMeta) {
-			phone = get(poi.tags, "contact:phone", "phone");
-			website = get(poi.tags, "contact:website", "website");
+			phone = poi.phone;
+			website = poi.website;
 		}
 
 		if (name != null && name.length() > nameMaxLength) {
@@ -402,31 +761,33 @@ public class PoiCreator implements OsmEntityGeometryHandler
 
 		p.setSid(poi.sid);
 
-		Set<Borough> boroughs = regions.getBoroughIndex().covering(poi.point);
+		Point point = poi.getPoint();
+		Set<Borough> boroughs = regions.getBoroughIndex().covering(point);
 		Set<PostalCode> postalCodes = regions.getPostalCodeIndex()
-				.covering(poi.point);
+				.covering(point);
 
 		BoroughSet boroughSet = boroughSets.get(boroughs);
 		if (boroughSet == null) {
 			boroughSet = new BoroughSet(boroughs);
 			boroughSets.put(boroughs, boroughSet);
-			sfOutput.getCurrentSession().persist(boroughSet);
+			output.insert(boroughSet);
 		}
 
 		PostalCodeSet postalCodeSet = postalCodeSets.get(postalCodes);
 		if (postalCodeSet == null) {
 			postalCodeSet = new PostalCodeSet(postalCodes);
 			postalCodeSets.put(postalCodes, postalCodeSet);
-			sfOutput.getCurrentSession().persist(postalCodeSet);
+			output.insert(postalCodeSet);
 		}
 
-		p.setTypes(poi.types);
+		// Each entity needs its own collection, type sets are shared
+		p.setTypes(new HashSet<>(poi.types));
 		// poi.setBoroughs(boroughs);
 		p.setBoroughSet(boroughSet);
 		// poi.setPostalCodes(postalCodes);
 		p.setPostalCodeSet(postalCodeSet);
 
-		sfOutput.getCurrentSession().persist(p);
+		output.insert(p);
 
 		logger.info("insert: " + name);
 	}
@@ -442,12 +803,4 @@ public class PoiCreator implements OsmEntityGeometryHandler
 		return false;
 	}
 
-	private String get(Map<String, String> tags, String key1, String key2)
-	{
-		if (tags.containsKey(key1)) {
-			return tags.get(key1);
-		}
-		return tags.get(key2);
-	}
-
 }
@@ -33,4 +33,10 @@ public class PointPoi extends Poi
 		super(name, point, tags, types);
 	}
 
+	PointPoi(String name, double lon, double lat, Set<PoiType> types,
+			String elevation, String phone, String website, String street)
+	{
+		super(name, lon, lat, types, elevation, phone, website, street);
+	}
+
 }
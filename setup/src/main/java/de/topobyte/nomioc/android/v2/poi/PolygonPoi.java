@@ -22,6 +22,8 @@ import java.util.Set;
 
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 
 import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
 
@@ -29,6 +31,12 @@ public class PolygonPoi extends Poi
 {
 
 	Geometry polygon;
+	private PreparedGeometry prepared = null;
+
+	/**
+	 * Whether the polygon has been absorbed by a point of the same name.
+	 */
+	boolean removed = false;
 
 	public PolygonPoi(String name, Geometry polygon, Point centroid,
 			Map<String, String> tags, Set<PoiType> types)
@@ -37,4 +45,16 @@ public class PolygonPoi extends Poi
 		this.polygon = polygon;
 	}
 
+	/**
+	 * Test whether the polygon covers the point. The geometry is prepared on
+	 * the first test, since most polygons are never tested at all.
+	 */
+	boolean covers(Point point)
+	{
+		if (prepared == null) {
+			prepared = PreparedGeometryFactory.prepare(polygon);
+		}
+		return prepared.covers(point);
+	}
+
 }
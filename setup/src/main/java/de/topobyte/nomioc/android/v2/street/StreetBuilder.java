@@ -24,7 +24,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.hibernate.SessionFactory;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.MultiPolygon;
@@ -38,13 +37,14 @@ import de.topobyte.diacritic.IDiacriticUtil;
 import de.topobyte.diacritic.NormalizerDiacriticUtil;
 import de.topobyte.jts.indexing.NearestNeighbourTesselation;
 import de.topobyte.mercatorcoordinates.GeoConv;
-import de.topobyte.nomioc.HibernateIndexBuilder;
+import de.topobyte.nomioc.SpatialIndexBuilder;
 import de.topobyte.nomioc.android.v2.model.hibernate.Borough;
 import de.topobyte.nomioc.android.v2.model.hibernate.BoroughSet;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
 import de.topobyte.nomioc.android.v2.model.hibernate.SpatialIndexFactoryStreet;
 import de.topobyte.nomioc.android.v2.model.hibernate.Street;
+import de.topobyte.nomioc.android.v2.output.GazetteerOutput;
 import de.topobyte.nomioc.android.v2.regions.Regions;
 import de.topobyte.nomioc.road.OsmGeometry;
 import de.topobyte.nomioc.road.RoadGroup;
@@ -61,7 +61,7 @@ public class StreetBuilder implements OsmEntityGeometryHandler
 
 	final static Logger logger = LoggerFactory.getLogger(StreetBuilder.class);
 
-	private SessionFactory sfOutput;
+	private GazetteerOutput output;
 
 	private Regions regions;
 
@@ -71,16 +71,47 @@ public class StreetBuilder implements OsmEntityGeometryHandler
 	private Map<Set<Borough>, BoroughSet> boroughSets;
 	private Map<Set<PostalCode>, PostalCodeSet> postalCodeSets;
 
-	public StreetBuilder(SessionFactory sfOutput, Regions regions,
+	private int threads = 1;
+	private boolean mercatorDistance = false;
+
+	public StreetBuilder(GazetteerOutput output, Regions regions,
 			Map<Set<Borough>, BoroughSet> boroughSets,
 			Map<Set<PostalCode>, PostalCodeSet> postalCodeSets)
 	{
-		this.sfOutput = sfOutput;
+		this.output = output;
 		this.regions = regions;
 		this.boroughSets = boroughSets;
 		this.postalCodeSets = postalCodeSets;
 	}
 
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads used for grouping road segments into streets.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public boolean isMercatorDistance()
+	{
+		return mercatorDistance;
+	}
+
+	/**
+	 * Choose whether road segments are grouped by their distance in mercator
+	 * space instead of their haversine distance (see
+	 * {@link RoadHelper#setMercatorDistance(boolean)}). Defaults to false.
+	 */
+	public void setMercatorDistance(boolean mercatorDistance)
+	{
+		this.mercatorDistance = mercatorDistance;
+	}
+
 	@Override
 	public void processNode(OsmNode node, Point point, Map<String, String> tags)
 	{
@@ -142,7 +173,8 @@ public class StreetBuilder implements OsmEntityGeometryHandler
 	public void buildStreets()
 	{
 		logger.info("building groups");
-		RoadHelper roadHelper = new RoadHelper(500);
+		RoadHelper roadHelper = new RoadHelper(500, threads);
+		roadHelper.setMercatorDistance(mercatorDistance);
 		Set<RoadGroup> groups = roadHelper.groupLogically(waySet, names);
 
 		IDiacriticUtil diacritic = new NormalizerDiacriticUtil();
@@ -174,11 +206,11 @@ public class StreetBuilder implements OsmEntityGeometryHandler
 			streets.add(street);
 		}
 
-		HibernateIndexBuilder.buildIndex(streets, sfOutput,
+		SpatialIndexBuilder.buildIndex(streets, output,
 				new SpatialIndexFactoryStreet());
 
 		for (Street street : streets) {
-			sfOutput.getCurrentSession().persist(street);
+			output.insert(street);
 		}
 	}
 
@@ -193,14 +225,14 @@ public class StreetBuilder implements OsmEntityGeometryHandler
 		if (boroughSet == null) {
 			boroughSet = new BoroughSet(boroughs);
 			boroughSets.put(boroughs, boroughSet);
-			sfOutput.getCurrentSession().persist(boroughSet);
+			output.insert(boroughSet);
 		}
 
 		PostalCodeSet postalCodeSet = postalCodeSets.get(postalCodes);
 		if (postalCodeSet == null) {
 			postalCodeSet = new PostalCodeSet(postalCodes);
 			postalCodeSets.put(postalCodes, postalCodeSet);
-			sfOutput.getCurrentSession().persist(postalCodeSet);
+			output.insert(postalCodeSet);
 		}
 
 		// street.setBoroughs(boroughs);
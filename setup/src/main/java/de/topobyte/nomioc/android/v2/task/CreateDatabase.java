@@ -20,15 +20,12 @@ package de.topobyte.nomioc.android.v2.task;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-import org.hibernate.SessionFactory;
 import org.hibernate.tool.hbm2ddl.SchemaExport;
 import org.hibernate.tool.schema.TargetType;
 import org.locationtech.jts.geom.Geometry;
@@ -36,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.topobyte.jts.indexing.NearestNeighbourTesselation;
+import de.topobyte.nomioc.CompositeGeometryHandler;
 import de.topobyte.nomioc.android.v2.config.ConfigBuilder;
 import de.topobyte.nomioc.android.v2.config.PoiClass;
 import de.topobyte.nomioc.android.v2.config.PoiConfig;
@@ -46,6 +44,10 @@ import de.topobyte.nomioc.android.v2.model.hibernate.BoroughSet;
 import de.topobyte.nomioc.android.v2.model.hibernate.PoiType;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCode;
 import de.topobyte.nomioc.android.v2.model.hibernate.PostalCodeSet;
+import de.topobyte.nomioc.android.v2.output.GazetteerOutput;
+import de.topobyte.nomioc.android.v2.output.GazetteerWriter;
+import de.topobyte.nomioc.android.v2.output.HibernateOutput;
+import de.topobyte.nomioc.android.v2.output.OutputMode;
 import de.topobyte.nomioc.android.v2.poi.PoiCreator;
 import de.topobyte.nomioc.android.v2.poi.TagChanger;
 import de.topobyte.nomioc.android.v2.regions.Regions;
@@ -55,10 +57,8 @@ import de.topobyte.osm4j.diskstorage.vardb.VarDB;
 import de.topobyte.osm4j.diskstorage.waydb.WayRecordWithTags;
 import de.topobyte.osm4j.processing.entities.ExecutableEntityProcessor;
 import de.topobyte.osm4j.processing.entities.filter.DefaultEntityFilter;
+import de.topobyte.osm4j.processing.entities.filter.EntityFilter;
 import de.topobyte.osm4j.utils.OsmFileInput;
-import de.topobyte.processutils.ProcessLogger;
-import de.topobyte.sqlitespatial.StatsTableManipulator;
-import de.topobyte.sqliteutils.SqliteUtil;
 
 /**
  * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
@@ -104,7 +104,13 @@ public class CreateDatabase
 
 	private PoiConfig poiConfig;
 
-	private SessionFactory sfOutput;
+	private OutputMode outputMode = OutputMode.HIBERNATE;
+	private int flushInterval = -1;
+	private int threads = 1;
+	private boolean mercatorDistance = false;
+	private boolean trigramTables = false;
+	private Path externalDirectory = null;
+	private GazetteerOutput output;
 	private PoiMapper poiMapper;
 	private PoiCreator poiCreator;
 
@@ -113,6 +119,96 @@ public class CreateDatabase
 
 	private String prefix = "jdbc:sqlite:";
 
+	public OutputMode getOutputMode()
+	{
+		return outputMode;
+	}
+
+	/**
+	 * Choose how entities are written to the database. Defaults to
+	 * {@link OutputMode#HIBERNATE}.
+	 */
+	public void setOutputMode(OutputMode outputMode)
+	{
+		this.outputMode = outputMode;
+	}
+
+	public int getFlushInterval()
+	{
+		return flushInterval;
+	}
+
+	/**
+	 * Set the number of insertions after which the session is flushed and
+	 * cleared when writing with Hibernate. This bounds the memory held by the
+	 * session, but does not batch the inserts of streets and POIs, since
+	 * Hibernate does not batch inserts of entities with identity generated
+	 * ids. If 0, the session is never flushed before committing. If negative
+	 * (the default), the JDBC batch size from the Hibernate configuration is
+	 * used as the interval.
+	 */
+	public void setFlushInterval(int flushInterval)
+	{
+		this.flushInterval = flushInterval;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Set the number of worker threads used for grouping streets and preparing
+	 * POI candidates. Defaults to 1, i.e. processing on the calling thread.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public boolean isMercatorDistance()
+	{
+		return mercatorDistance;
+	}
+
+	/**
+	 * Group road segments into streets by their distance in mercator space
+	 * instead of their haversine distance. Defaults to false.
+	 */
+	public void setMercatorDistance(boolean mercatorDistance)
+	{
+		this.mercatorDistance = mercatorDistance;
+	}
+
+	public boolean isTrigramTables()
+	{
+		return trigramTables;
+	}
+
+	/**
+	 * Create trigram tables for substring name search. Defaults to false,
+	 * since they make the database larger.
+	 */
+	public void setTrigramTables(boolean trigramTables)
+	{
+		this.trigramTables = trigramTables;
+	}
+
+	public Path getExternalDirectory()
+	{
+		return externalDirectory;
+	}
+
+	/**
+	 * Store point candidates in temporary files in the specified directory
+	 * instead of memory, which bounds the memory needed for large extracts.
+	 * Defaults to null, i.e. keeping all candidates in memory.
+	 */
+	public void setExternalDirectory(Path externalDirectory)
+	{
+		this.externalDirectory = externalDirectory;
+	}
+
 	public void prepare() throws IOException, DatabaseCreationException
 	{
 		logger.info("reading configuration");
@@ -146,7 +242,6 @@ public class CreateDatabase
 		System.setProperty("dbpath", prefix + databasePath);
 		AndroidSessionFactory androidSessionFactory = new AndroidSessionFactory(
 				hibernateConfigPath);
-		sfOutput = androidSessionFactory.getSessionFactory();
 
 		logger.info("creating target schema");
 		SchemaExport schemaExport = new SchemaExport();
@@ -154,18 +249,35 @@ public class CreateDatabase
 		schemaExport.create(EnumSet.of(TargetType.DATABASE),
 				androidSessionFactory.getMetadata());
 
+		if (outputMode == OutputMode.JDBC) {
+			androidSessionFactory.getSessionFactory().close();
+			try {
+				output = new GazetteerWriter(databaseFile);
+			} catch (SQLException e) {
+				throw new DatabaseCreationException(
+						"unable to open target database", e);
+			}
+		} else {
+			int interval = flushInterval;
+			if (interval < 0) {
+				interval = androidSessionFactory.getBatchSize();
+			}
+			output = new HibernateOutput(
+					androidSessionFactory.getSessionFactory(), interval);
+		}
+
 		logger.info("transfering admin entity instances");
-		sfOutput.getCurrentSession().beginTransaction();
+		output.begin();
 
 		/*
 		 * boroughs and postal codes
 		 */
 
 		for (Borough borough : regions.getBoroughIndex().values()) {
-			sfOutput.getCurrentSession().persist(borough);
+			output.insert(borough);
 		}
 		for (PostalCode postalCode : regions.getPostalCodeIndex().values()) {
-			sfOutput.getCurrentSession().persist(postalCode);
+			output.insert(postalCode);
 		}
 
 		logger.info("creating poi types");
@@ -174,19 +286,19 @@ public class CreateDatabase
 
 		for (PoiClass type : poiConfig.getClasses()) {
 			PoiType poiType = poiMapper.getPoiType(type.getIdentifier());
-			sfOutput.getCurrentSession().persist(poiType);
+			output.insert(poiType);
 		}
 		for (PoiClass type : poiConfig.getClassesNoName()) {
 			PoiType poiType = poiMapper.getPoiType(type.getIdentifier());
-			sfOutput.getCurrentSession().persist(poiType);
+			output.insert(poiType);
 		}
 
 		for (String type : poiMapper.getExtraTypes()) {
 			PoiType poiType = poiMapper.getPoiType(type);
-			sfOutput.getCurrentSession().persist(poiType);
+			output.insert(poiType);
 		}
 
-		sfOutput.getCurrentSession().getTransaction().commit();
+		output.commit();
 	}
 
 	public void execute() throws IOException, DatabaseCreationException
@@ -194,86 +306,84 @@ public class CreateDatabase
 		Map<Set<Borough>, BoroughSet> boroughSets = new HashMap<>();
 		Map<Set<PostalCode>, PostalCodeSet> postalCodeSets = new HashMap<>();
 
-		logger.info("creating streets");
-		sfOutput.getCurrentSession().beginTransaction();
-
-		StreetBuilder streetBuilder = new StreetBuilder(sfOutput, regions,
+		StreetBuilder streetBuilder = new StreetBuilder(output, regions,
 				boroughSets, postalCodeSets);
+		streetBuilder.setThreads(threads);
+		streetBuilder.setMercatorDistance(mercatorDistance);
+		poiCreator = new PoiCreator(output, regions, boroughSets,
+				postalCodeSets, poiMapper, MAX_NAME_LENGTH, tagPreprocessor);
+		poiCreator.setThreads(threads);
+		poiCreator.setExternalDirectory(externalDirectory);
+
+		/*
+		 * Collect street and POI candidates in a single pass over the input.
+		 * The street builder comes first since the POI creator's tag
+		 * preprocessor may modify the tags.
+		 */
+		logger.info("processing entities");
+		CompositeGeometryHandler handler = new CompositeGeometryHandler(
+				streetBuilder, poiCreator);
+		EntityFilter filter;
+		RelevantEntityFilter relevantFilter = null;
+		if (tagPreprocessor == null) {
+			relevantFilter = new RelevantEntityFilter(poiConfig);
+			filter = relevantFilter;
+		} else {
+			// The preprocessor could make entities relevant by changing tags
+			filter = new DefaultEntityFilter();
+		}
 		ExecutableEntityProcessor processor = new ExecutableEntityProcessor(
-				streetBuilder, nodeDB, wayDB, cityBoundary, failedPolygonsDir,
-				new DefaultEntityFilter());
+				handler, nodeDB, wayDB, cityBoundary, failedPolygonsDir,
+				filter);
 		processor.prepare();
 		processor.execute(inputFile, inputFile, inputFile);
+
+		if (relevantFilter != null) {
+			logger.info(String.format(
+					"skipped irrelevant entities: %d of %d nodes,"
+							+ " %d of %d ways, %d of %d relations",
+					relevantFilter.getNodesRejected(),
+					relevantFilter.getNodesAccepted()
+							+ relevantFilter.getNodesRejected(),
+					relevantFilter.getWaysRejected(),
+					relevantFilter.getWaysAccepted()
+							+ relevantFilter.getWaysRejected(),
+					relevantFilter.getRelationsRejected(),
+					relevantFilter.getRelationsAccepted()
+							+ relevantFilter.getRelationsRejected()));
+		}
+
+		// Measure the insert phase, independently of the processing above
+		PeakHeap peakHeap = PeakHeap.start();
+
+		logger.info("creating streets");
+		output.begin();
+
 		streetBuilder.buildStreets();
 
-		sfOutput.getCurrentSession().getTransaction().commit();
+		output.commit();
 
 		NearestNeighbourTesselation<String> streetNameMap = streetBuilder
 				.buildNameLookup();
+		poiCreator.setStreetNameMap(streetNameMap);
 
 		logger.info("creating pois");
-		sfOutput.getCurrentSession().beginTransaction();
+		output.begin();
 
-		poiCreator = new PoiCreator(sfOutput, regions, boroughSets,
-				postalCodeSets, poiMapper, streetNameMap, MAX_NAME_LENGTH,
-				tagPreprocessor);
-		processor = new ExecutableEntityProcessor(poiCreator, nodeDB, wayDB,
-				cityBoundary, failedPolygonsDir, new DefaultEntityFilter());
-		processor.prepare();
-		processor.execute(inputFile, inputFile, inputFile);
 		poiCreator.buildPois();
 
-		sfOutput.getCurrentSession().getTransaction().commit();
-		sfOutput.close();
+		output.commit();
+		output.close();
 
-		createPoitypesIndex();
+		logger.info(String.format(
+				"peak retained heap while inserting streets and pois: %d MiB",
+				peakHeap.stop() >> 20));
 
-		try {
-			SqliteUtil.vacuum(databaseFile.toFile());
-		} catch (IOException e) {
-			throw new DatabaseCreationException("Error while performing vacuum",
-					e);
-		}
-
-		try {
-			SqliteUtil.analyze(databaseFile.toFile());
-		} catch (SQLException e) {
-			throw new DatabaseCreationException(
-					"Error while performing analyze", e);
-		}
-
-		manipulateStatsTable();
+		DatabaseFinalizer finalizer = new DatabaseFinalizer(databaseFile);
+		finalizer.setTrigramTables(trigramTables);
+		finalizer.execute();
 
 		poiMapper.getRestAnalyzer().analyzeOtherHistogram();
 	}
 
-	private void createPoitypesIndex() throws DatabaseCreationException
-	{
-		try {
-			logger.info("Creating extra index on pois_types");
-			Process process = Runtime.getRuntime().exec(new String[] {
-					"sqlite3", databaseFile.toString(),
-					"create index pois_types_type on pois_types (types_id)" });
-			ProcessLogger processLogger = new ProcessLogger(process, logger);
-			processLogger.waitForEnd();
-		} catch (IOException e) {
-			throw new DatabaseCreationException(
-					"Error while creating extra index on poi types", e);
-		}
-	}
-
-	private void manipulateStatsTable() throws DatabaseCreationException
-	{
-		try {
-			StatsTableManipulator manipulator = new StatsTableManipulator();
-			Connection connection = DriverManager
-					.getConnection(prefix + databaseFile.toString());
-			manipulator.manipulateStatsTable(connection);
-			connection.close();
-		} catch (SQLException e) {
-			throw new DatabaseCreationException(
-					"Error while manipulating stats table", e);
-		}
-	}
-
 }
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import de.topobyte.melon.io.ModTimes;
 import de.topobyte.melon.paths.PathUtil;
+import de.topobyte.nomioc.android.v2.output.OutputMode;
 import de.topobyte.nomioc.android.v2.regions.Regions;
 import de.topobyte.nomioc.android.v2.regions.RegionsUtil;
 import de.topobyte.osm4j.diskstorage.DbExtensions;
@@ -65,6 +66,13 @@ public class CreateDatabaseCustom
 	private Path basenameNodeDb;
 	private Path basenameWayDb;
 
+	private OutputMode outputMode = OutputMode.HIBERNATE;
+	private int flushInterval = -1;
+	private int threads = 1;
+	private boolean mercatorDistance = false;
+	private boolean trigramTables = false;
+	private Path externalDirectory = null;
+
 	public void setup(Path input, Path boundary, Path regions, Path output,
 			Path pathPoiConfig, String pathFailingIntersections,
 			boolean updateOnly, Path basenameNodeDb, Path basenameWayDb)
@@ -80,12 +88,83 @@ public class CreateDatabaseCustom
 		this.updateOnly = updateOnly;
 	}
 
+	public OutputMode getOutputMode()
+	{
+		return outputMode;
+	}
+
+	public void setOutputMode(OutputMode outputMode)
+	{
+		this.outputMode = outputMode;
+	}
+
+	public int getFlushInterval()
+	{
+		return flushInterval;
+	}
+
+	public void setFlushInterval(int flushInterval)
+	{
+		this.flushInterval = flushInterval;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public boolean isMercatorDistance()
+	{
+		return mercatorDistance;
+	}
+
+	public void setMercatorDistance(boolean mercatorDistance)
+	{
+		this.mercatorDistance = mercatorDistance;
+	}
+
+	public boolean isTrigramTables()
+	{
+		return trigramTables;
+	}
+
+	public void setTrigramTables(boolean trigramTables)
+	{
+		this.trigramTables = trigramTables;
+	}
+
+	public Path getExternalDirectory()
+	{
+		return externalDirectory;
+	}
+
+	public void setExternalDirectory(Path externalDirectory)
+	{
+		this.externalDirectory = externalDirectory;
+	}
+
 	public void prepare() throws TaskException
 	{
 		logger.info("input file: " + inputFile);
 		logger.info("output file: " + databaseFile);
 		logger.info("nodes database: " + basenameNodeDb);
 		logger.info("ways database: " + basenameWayDb);
+		logger.info("output mode: " + outputMode);
+		logger.info("threads: " + threads);
+		if (mercatorDistance) {
+			logger.info("grouping streets by mercator distance");
+		}
+		if (trigramTables) {
+			logger.info("creating trigram tables");
+		}
+		if (externalDirectory != null) {
+			logger.info("external storage: " + externalDirectory);
+		}
 
 		/*
 		 * check some preconditions
@@ -204,6 +283,12 @@ public class CreateDatabaseCustom
 		CreateDatabase creator = new CreateDatabase(input, cityBoundary,
 				pathPoiConfig, regions, null, nodeDbIndexFile, nodeDbDataFile,
 				wayDbIndexFile, wayDbDataFile, databaseFile, failures);
+		creator.setOutputMode(outputMode);
+		creator.setFlushInterval(flushInterval);
+		creator.setThreads(threads);
+		creator.setMercatorDistance(mercatorDistance);
+		creator.setTrigramTables(trigramTables);
+		creator.setExternalDirectory(externalDirectory);
 
 		try {
 			creator.prepare();
@@ -0,0 +1,192 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.task;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.topobyte.sqlitespatial.StatsTableManipulator;
+
+/**
+ * Post-processing of a database after all entities have been inserted. All
+ * steps are executed in-process over a single connection: additional indexes
+ * and optionally the trigram tables (see {@link #setTrigramTables(boolean)})
+ * are created in one transaction after the bulk load, followed by a single
+ * VACUUM, ANALYZE and the manipulation of the statistics table for the
+ * spatial indexes.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class DatabaseFinalizer
+{
+
+	final static Logger logger = LoggerFactory
+			.getLogger(DatabaseFinalizer.class);
+
+	private String prefix = "jdbc:sqlite:";
+
+	private Path databaseFile;
+	private boolean trigramTables = false;
+
+	public DatabaseFinalizer(Path databaseFile)
+	{
+		this.databaseFile = databaseFile;
+	}
+
+	public boolean isTrigramTables()
+	{
+		return trigramTables;
+	}
+
+	/**
+	 * Choose whether to create the trigram tables for substring name search.
+	 * They make the database larger, hence they are not created by default.
+	 */
+	public void setTrigramTables(boolean trigramTables)
+	{
+		this.trigramTables = trigramTables;
+	}
+
+	public void execute() throws DatabaseCreationException
+	{
+		Connection connection;
+		try {
+			connection = DriverManager
+					.getConnection(prefix + databaseFile.toString());
+		} catch (SQLException e) {
+			throw new DatabaseCreationException(
+					"Error while opening database for finalization", e);
+		}
+
+		try {
+			createIndexesAndTables(connection);
+			vacuum(connection);
+			analyze(connection);
+			manipulateStatsTable(connection);
+		} finally {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.warn("Error while closing database", e);
+			}
+		}
+	}
+
+	private void createIndexesAndTables(Connection connection)
+			throws DatabaseCreationException
+	{
+		try {
+			connection.setAutoCommit(false);
+			Statement statement = connection.createStatement();
+
+			logger.info("Creating extra index on pois_types");
+			// Includes the POI ids, so that lookups by type are covered by
+			// the index alone
+			statement.execute("create index pois_types_type"
+					+ " on pois_types (types_id, pois_id)");
+
+			if (trigramTables) {
+				logger.info("Creating trigram tables for name search");
+				createTrigramTable(statement, "streets", "streets_trigrams");
+				createTrigramTable(statement, "pois", "pois_trigrams");
+			}
+
+			statement.close();
+			connection.commit();
+			connection.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new DatabaseCreationException(
+					"Error while creating extra indexes and trigram tables", e);
+		}
+	}
+
+	/**
+	 * Create a table that maps each three character substring of the lower
+	 * cased simple names of the source table to the ids of the entities. This
+	 * is used for answering 'like' queries with wildcards at the beginning
+	 * without a full table scan (see TrigramDao in nomioc-luqe). We use SQLite's
+	 * lower() function here which is consistent with the case-insensitivity of
+	 * the 'like' operator.
+	 *
+	 * The table is an ordinary rowid table with a unique index rather than a
+	 * WITHOUT ROWID table, which could not be opened by SQLite versions before
+	 * 3.8.2 as found on older Android devices.
+	 */
+	private void createTrigramTable(Statement statement, String source,
+			String table) throws SQLException
+	{
+		statement.execute("create table " + table
+				+ " (trigram varchar not null, id integer not null)");
+		statement.execute("create unique index " + table + "_trigram_id"
+				+ " on " + table + " (trigram, id)");
+		statement.execute("insert or ignore into " + table + " (trigram, id)"
+				+ " with recursive grams(id, name, pos) as ("
+				+ " select id, lower(simple_name), 1 from " + source
+				+ " where length(simple_name) >= 3" + " union all"
+				+ " select id, name, pos + 1 from grams"
+				+ " where pos + 3 <= length(name))"
+				+ " select substr(name, pos, 3), id from grams");
+	}
+
+	private void vacuum(Connection connection)
+			throws DatabaseCreationException
+	{
+		try {
+			logger.info("Performing vacuum");
+			Statement statement = connection.createStatement();
+			statement.execute("vacuum");
+			statement.close();
+		} catch (SQLException e) {
+			throw new DatabaseCreationException("Error while performing vacuum",
+					e);
+		}
+	}
+
+	private void analyze(Connection connection)
+			throws DatabaseCreationException
+	{
+		try {
+			logger.info("Performing analyze");
+			Statement statement = connection.createStatement();
+			statement.execute("analyze");
+			statement.close();
+		} catch (SQLException e) {
+			throw new DatabaseCreationException(
+					"Error while performing analyze", e);
+		}
+	}
+
+	private void manipulateStatsTable(Connection connection)
+			throws DatabaseCreationException
+	{
+		try {
+			StatsTableManipulator manipulator = new StatsTableManipulator();
+			manipulator.manipulateStatsTable(connection);
+		} catch (SQLException e) {
+			throw new DatabaseCreationException(
+					"Error while manipulating stats table", e);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.task;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Peak retained heap, for reporting the memory needed by individual phases of
+ * the build. The heap usage directly after each garbage collection is recorded,
+ * so that garbage that has not been collected yet does not inflate the value.
+ * The peak usages of the individual pools are not summed up, since the pools
+ * usually reach their peaks at different times.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+class PeakHeap implements NotificationListener
+{
+
+	private final Set<String> heapPools = new HashSet<>();
+	private long peak = 0;
+
+	private PeakHeap()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool.getName());
+			}
+		}
+	}
+
+	/**
+	 * Start tracking the retained heap.
+	 */
+	static PeakHeap start()
+	{
+		PeakHeap peakHeap = new PeakHeap();
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				((NotificationEmitter) gc).addNotificationListener(peakHeap,
+						null, null);
+			}
+		}
+		return peakHeap;
+	}
+
+	/**
+	 * Stop tracking. A final garbage collection is requested, so that the heap
+	 * retained at the end is included even if no collection happened before.
+	 *
+	 * @return the maximum heap usage after a garbage collection in bytes.
+	 */
+	long stop()
+	{
+		System.gc();
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				MemoryUsage usage = pool.getCollectionUsage();
+				if (usage != null) {
+					used += usage.getUsed();
+				}
+			}
+		}
+		update(used);
+
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				try {
+					((NotificationEmitter) gc).removeNotificationListener(this);
+				} catch (ListenerNotFoundException e) {
+					// not registered with this collector
+				}
+			}
+		}
+		return get();
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback)
+	{
+		if (!notification.getType().equals(
+				GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo()
+				.getMemoryUsageAfterGc().entrySet()) {
+			if (heapPools.contains(entry.getKey())) {
+				used += entry.getValue().getUsed();
+			}
+		}
+		update(used);
+	}
+
+	private synchronized void update(long used)
+	{
+		peak = Math.max(peak, used);
+	}
+
+	private synchronized long get()
+	{
+		return peak;
+	}
+
+}
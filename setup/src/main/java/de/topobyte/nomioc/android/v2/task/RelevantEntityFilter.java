@@ -0,0 +1,156 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.android.v2.task;
+
+import java.util.Map;
+
+import de.topobyte.nomioc.android.v2.config.PoiConfig;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmTag;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.core.model.util.OsmModelUtil;
+import de.topobyte.osm4j.processing.entities.filter.DefaultEntityFilter;
+
+/**
+ * An entity filter that rejects entities that can neither become a street nor
+ * a POI based on their tags alone, so that no geometries are built for them.
+ *
+ * Streets require a name and POIs without a name need to match one of the
+ * classes of the POI configuration. Hence an entity is relevant if it has a
+ * name or matches the configuration. The tags are checked in place and a map
+ * of them is only created for entities with a tag mapped by the configuration
+ * (see {@link PoiConfig#mayMatch(String, String)}). Entities are counted, so
+ * that the number of avoided geometry constructions can be reported.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class RelevantEntityFilter extends DefaultEntityFilter
+{
+
+	private PoiConfig poiConfig;
+
+	private long nodesAccepted = 0;
+	private long nodesRejected = 0;
+	private long waysAccepted = 0;
+	private long waysRejected = 0;
+	private long relationsAccepted = 0;
+	private long relationsRejected = 0;
+
+	public RelevantEntityFilter(PoiConfig poiConfig)
+	{
+		this.poiConfig = poiConfig;
+	}
+
+	@Override
+	public boolean filterNode(OsmNode node)
+	{
+		if (!super.filterNode(node)) {
+			return false;
+		}
+		boolean relevant = isRelevant(node);
+		if (relevant) {
+			nodesAccepted++;
+		} else {
+			nodesRejected++;
+		}
+		return relevant;
+	}
+
+	@Override
+	public boolean filterWay(OsmWay way)
+	{
+		if (!super.filterWay(way)) {
+			return false;
+		}
+		boolean relevant = isRelevant(way);
+		if (relevant) {
+			waysAccepted++;
+		} else {
+			waysRejected++;
+		}
+		return relevant;
+	}
+
+	@Override
+	public boolean filterRelation(OsmRelation relation)
+	{
+		if (!super.filterRelation(relation)) {
+			return false;
+		}
+		boolean relevant = isRelevant(relation);
+		if (relevant) {
+			relationsAccepted++;
+		} else {
+			relationsRejected++;
+		}
+		return relevant;
+	}
+
+	private boolean isRelevant(OsmEntity entity)
+	{
+		boolean candidate = false;
+		for (int i = 0; i < entity.getNumberOfTags(); i++) {
+			OsmTag tag = entity.getTag(i);
+			if (tag.getKey().equals("name")) {
+				return true;
+			}
+			if (!candidate
+					&& poiConfig.mayMatch(tag.getKey(), tag.getValue())) {
+				candidate = true;
+			}
+		}
+		if (!candidate) {
+			return false;
+		}
+		Map<String, String> tags = OsmModelUtil.getTagsAsMap(entity);
+		return !poiConfig.determine(tags).isEmpty();
+	}
+
+	public long getNodesAccepted()
+	{
+		return nodesAccepted;
+	}
+
+	public long getNodesRejected()
+	{
+		return nodesRejected;
+	}
+
+	public long getWaysAccepted()
+	{
+		return waysAccepted;
+	}
+
+	public long getWaysRejected()
+	{
+		return waysRejected;
+	}
+
+	public long getRelationsAccepted()
+	{
+		return relationsAccepted;
+	}
+
+	public long getRelationsRejected()
+	{
+		return relationsRejected;
+	}
+
+}
@@ -0,0 +1,74 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.pois;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.xmlbeans.XmlException;
+
+import de.topobyte.melon.resources.Resources;
+import de.topobyte.nomioc.android.v2.config.ConfigBuilder;
+import de.topobyte.nomioc.android.v2.config.PoiConfig;
+
+/**
+ * Compares classification of tags by walking the tree of filter rules with the
+ * compiled form of the configuration.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class BenchmarkPoiClassification
+{
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws XmlException, IOException
+	{
+		PoiConfig config = ConfigBuilder.build(Resources.stream("pois.xml"));
+		List<Map<String, String>> corpus = TagCorpus.create(500000, 1);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			int interpreted = 0;
+			for (Map<String, String> tags : corpus) {
+				interpreted += config.determineInterpreted(tags).size();
+			}
+			report("interpreted", start, corpus.size());
+
+			start = System.nanoTime();
+			int compiled = 0;
+			for (Map<String, String> tags : corpus) {
+				compiled += config.determine(tags).size();
+			}
+			report("compiled", start, corpus.size());
+
+			if (interpreted != compiled) {
+				System.out.println("results differ!");
+			}
+		}
+	}
+
+	private static void report(String name, long start, int size)
+	{
+		long stop = System.nanoTime();
+		System.out.println(String.format("%s: %.1f ns per entity", name,
+				(stop - start) / (double) size));
+	}
+
+}
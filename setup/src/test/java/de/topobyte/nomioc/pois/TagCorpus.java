@@ -0,0 +1,73 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.pois;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates random tag sets resembling those of OSM entities, including tags
+ * irrelevant for POIs, missing names and values with multiple entries.
+ *
+ * @author Sebastian Kuerten (sebastian.kuerten@fu-berlin.de)
+ */
+public class TagCorpus
+{
+
+	private static final String[][] TAGS = new String[][] {
+			{ "amenity", "restaurant", "cafe", "atm", "place_of_worship",
+					"parking", "bench", "toilets", "fast_food",
+					"restaurant;cafe", " pub ", "bank; atm", "cafe;cafe" },
+			{ "shop", "bakery", "supermarket", "kiosk", "yes", "organic",
+					"bakery;cafe", "clothes;shoes" },
+			{ "tourism", "hotel", "viewpoint", "information", "artwork" },
+			{ "place", "city", "town", "neighbourhood", "locality" },
+			{ "religion", "christian", "muslim", "buddhist" },
+			{ "leisure", "park", "playground", "pitch" },
+			{ "natural", "peak", "water", "tree" },
+			{ "landuse", "cemetery", "residential" },
+			{ "building", "yes", "school", "college", "public" },
+			{ "highway", "bus_stop", "residential", "primary" },
+			{ "railway", "station", "tram_stop", "rail" },
+			{ "historic", "memorial", "castle" },
+			{ "name", "Foo", "Bar", "Sportplatz", "12a" },
+			{ "operator", "Sparkasse", "Deutsche Bahn AG" },
+			{ "addr:street", "Hauptstraße" }, { "ele", "512" },
+			{ "surface", "asphalt" }, { "lit", "yes" } };
+
+	public static List<Map<String, String>> create(int size, long seed)
+	{
+		Random random = new Random(seed);
+		List<Map<String, String>> corpus = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Map<String, String> tags = new HashMap<>();
+			int n = random.nextInt(6);
+			for (int k = 0; k < n; k++) {
+				String[] tag = TAGS[random.nextInt(TAGS.length)];
+				String value = tag[1 + random.nextInt(tag.length - 1)];
+				tags.put(tag[0], value);
+			}
+			corpus.add(tags);
+		}
+		return corpus;
+	}
+
+}
@@ -0,0 +1,48 @@
+// Copyright 2021 Sebastian Kuerten
+//
+// This file is part of nomioc.
+//
+// nomioc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// nomioc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with nomioc. If not, see <http://www.gnu.org/licenses/>.
+
+package de.topobyte.nomioc.pois;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.topobyte.melon.resources.Resources;
+import de.topobyte.nomioc.android.v2.config.ConfigBuilder;
+import de.topobyte.nomioc.android.v2.config.PoiConfig;
+
+public class TestCompiledPoiConfig
+{
+
+	@Test
+	public void test() throws XmlException, IOException
+	{
+		PoiConfig config = ConfigBuilder.build(Resources.stream("pois.xml"));
+		Assert.assertTrue(config.isCompiled());
+
+		List<Map<String, String>> corpus = TagCorpus.create(20000, 1);
+		for (Map<String, String> tags : corpus) {
+			Assert.assertEquals(tags.toString(),
+					config.determineInterpreted(tags), config.determine(tags));
+		}
+	}
+
+}